@@ -0,0 +1,107 @@
+package com.github.d.romanov.spotify.importer.client.codec;
+
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SearchTrackIdDecoder} against the path it replaced: {@code bodyToMono(SearchResponse.class)}, i.e.
+ * {@link Jackson2JsonDecoder} with Spring Boot's object mapper binding the response to the records copied below.
+ * Responses are fixtures in Spotify API shape ({@code src/test/resources/spotify}), fed in buffers of
+ * {@code chunkSize} bytes as they arrive from the network. Run with {@code -prof gc} to compare allocation.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchTrackIdDecoderBenchmark {
+
+    private static final ResolvableType TRACK_ID_TYPE = ResolvableType.forClass(TrackId.class);
+    private static final ResolvableType SEARCH_RESPONSE_TYPE = ResolvableType.forClass(SearchResponse.class);
+
+    @Param({"search-found.json", "search-not-found.json"})
+    private String fixture;
+
+    @Param({"1024", "16384"})
+    private int chunkSize;
+
+    private final SearchTrackIdDecoder streamingDecoder = new SearchTrackIdDecoder();
+    private final Jackson2JsonDecoder bindingDecoder = new Jackson2JsonDecoder(Jackson2ObjectMapperBuilder.json()
+            .build());
+    private List<byte[]> chunks;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] bytes;
+        try (InputStream inputStream = getClass().getResourceAsStream("/spotify/" + fixture)) {
+            bytes = inputStream.readAllBytes();
+        }
+        chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            byte[] chunk = new byte[Math.min(chunkSize, bytes.length - offset)];
+            System.arraycopy(bytes, offset, chunk, 0, chunk.length);
+            chunks.add(chunk);
+        }
+    }
+
+    @Benchmark
+    public TrackId streaming() {
+        return streamingDecoder.decodeToMono(body(), TRACK_ID_TYPE, MediaType.APPLICATION_JSON, Map.of())
+                .block();
+    }
+
+    @Benchmark
+    public TrackId binding() {
+        return bindingDecoder.decodeToMono(body(), SEARCH_RESPONSE_TYPE, MediaType.APPLICATION_JSON, Map.of())
+                .cast(SearchResponse.class)
+                .mapNotNull(searchResponse -> Optional.ofNullable(searchResponse)
+                        .map(SearchResponse::tracks)
+                        .map(ItemsWrapper::items)
+                        .filter(items -> !items.isEmpty())
+                        .map(items -> items.get(0))
+                        .map(Item::id)
+                        .map(TrackId::of)
+                        .orElse(null))
+                .block();
+    }
+
+    private Flux<DataBuffer> body() {
+        return Flux.fromIterable(chunks).map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+
+    /**
+     * Search response DTOs as they were before {@link SearchTrackIdDecoder}
+     */
+    record SearchResponse(ItemsWrapper tracks) {}
+
+    record ItemsWrapper(List<Item> items) {}
+
+    record Item(String id) {}
+}
@@ -0,0 +1,102 @@
+package com.github.d.romanov.spotify.importer.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap taken by 50k found tracks: {@link Track} with packed {@link TrackId} against the mutable track with
+ * {@code String} id it replaced ({@code LegacyTrack}, copied below). Run with {@code -prof gc}:
+ * {@code gc.alloc.rate.norm} is bytes per track, all of them retained by the list, which is presized so
+ * that it doesn't allocate garbage while growing.
+ * <p>
+ * Names are shared by both, only the track object and its id differ. Legacy id is decoded from response bytes
+ * into a new {@code String}, as the JSON decoder did.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackFootprintBenchmark {
+
+    private static final int TRACKS = 50_000;
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private final String[] ids = new String[TRACKS];
+    private final byte[][] idBytes = new byte[TRACKS][];
+    private final String[] trackNames = new String[TRACKS];
+    private final String[] artistNames = new String[TRACKS];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < TRACKS; i++) {
+            char[] id = new char[TrackId.LENGTH];
+            for (int j = 0; j < id.length; j++) {
+                id[j] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            }
+            ids[i] = new String(id);
+            idBytes[i] = ids[i].getBytes(StandardCharsets.ISO_8859_1);
+            trackNames[i] = "Track " + i;
+            artistNames[i] = "Artist " + i % 1000;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACKS)
+    public List<LegacyTrack> legacyTracks() {
+        List<LegacyTrack> tracks = new ArrayList<>(TRACKS);
+        for (int i = 0; i < TRACKS; i++) {
+            tracks.add(new LegacyTrack(new String(idBytes[i], StandardCharsets.ISO_8859_1), trackNames[i],
+                    artistNames[i]));
+        }
+        return tracks;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACKS)
+    public List<Track> packedTracks() {
+        List<Track> tracks = new ArrayList<>(TRACKS);
+        for (int i = 0; i < TRACKS; i++) {
+            tracks.add(new Track(trackNames[i], artistNames[i], TrackId.of(ids[i])));
+        }
+        return tracks;
+    }
+
+    /**
+     * Track as it was before {@link Track} became a record, Lombok {@code @Data} fields only
+     */
+    public static final class LegacyTrack {
+
+        private String id;
+        private String trackName;
+        private String artistName;
+
+        LegacyTrack(String id, String trackName, String artistName) {
+            this.id = id;
+            this.trackName = trackName;
+            this.artistName = artistName;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import com.github.d.romanov.spotify.importer.config.props.ParserProps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole iTunes library parsed by {@link ITunesXmlFileParser} from upload buffers, against
+ * {@link ITunesXmlParallelFileParser} from the spooled file. Library is generated with the keys iTunes exports
+ * for every track, so track dicts are as large as in real libraries.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ITunesParserBenchmark {
+
+    private static final int READ_CHUNK_SIZE = 256 * 1024;
+
+    @Param({"20000", "100000"})
+    private int tracks;
+
+    @Param({"4"})
+    private int parallelism;
+
+    private Path library;
+    private ITunesXmlFileParser sequentialParser;
+    private ITunesXmlParallelFileParser parallelParser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        library = Files.createTempFile("itunes-benchmark-", ".xml");
+        writeLibrary(library, tracks);
+        ParserProps.Itunes itunes = new ParserProps.Itunes();
+        itunes.setParallelism(parallelism);
+        itunes.setChunkSize(DataSize.ofMegabytes(4));
+        itunes.setParallelThreshold(DataSize.ofMegabytes(32));
+        ParserProps parserProps = new ParserProps();
+        parserProps.setItunes(itunes);
+        sequentialParser = new ITunesXmlFileParser();
+        parallelParser = new ITunesXmlParallelFileParser(parserProps);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        parallelParser.dispose();
+        Files.deleteIfExists(library);
+    }
+
+    @Benchmark
+    public long sequential() {
+        return sequentialParser.parseTracks(DataBufferUtils.read(library, DefaultDataBufferFactory.sharedInstance,
+                        READ_CHUNK_SIZE))
+                .count()
+                .block();
+    }
+
+    @Benchmark
+    public long parallel() {
+        return parallelParser.parseTracks(library)
+                .count()
+                .block();
+    }
+
+    private static void writeLibrary(Path path, int tracks) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("""
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <!DOCTYPE plist PUBLIC "-//Apple//DTD PLIST 1.0//EN" "http://www.apple.com/DTDs/PropertyList-1.0.dtd">
+                    <plist version="1.0">
+                    <dict>
+                    \t<key>Major Version</key><integer>1</integer>
+                    \t<key>Minor Version</key><integer>1</integer>
+                    \t<key>Application Version</key><string>12.8.2.3</string>
+                    \t<key>Tracks</key>
+                    \t<dict>
+                    """);
+            for (int id = 1; id <= tracks; id++) {
+                writer.write("\t\t<key>" + id + "</key>\n\t\t<dict>\n");
+                integer(writer, "Track ID", id);
+                string(writer, "Size", String.valueOf(4_000_000 + id));
+                integer(writer, "Total Time", 180_000 + id % 120_000);
+                integer(writer, "Track Number", id % 14 + 1);
+                integer(writer, "Year", 1960 + id % 60);
+                string(writer, "Date Modified", "2019-05-04T10:12:44Z");
+                string(writer, "Date Added", "2019-05-04T10:12:44Z");
+                integer(writer, "Bit Rate", 256);
+                integer(writer, "Sample Rate", 44100);
+                integer(writer, "Play Count", id % 40);
+                string(writer, "Persistent ID", String.format("%016X", id * 2654435761L));
+                string(writer, "Track Type", "File");
+                string(writer, "Name", "Track &amp; Song Title " + id);
+                string(writer, "Artist", "Artist Name " + id % 5000);
+                string(writer, "Album Artist", "Artist Name " + id % 5000);
+                string(writer, "Album", "Album Title " + id % 9000);
+                string(writer, "Genre", "Rock");
+                string(writer, "Kind", "AAC audio file");
+                string(writer, "Location", "file:///Users/user/Music/iTunes/iTunes%20Media/Music/Artist%20Name%20"
+                        + id % 5000 + "/Album%20Title%20" + id % 9000 + "/" + id + "%20Track.m4a");
+                writer.write("\t\t</dict>\n");
+            }
+            writer.write("\t</dict>\n</dict>\n</plist>\n");
+        }
+    }
+
+    private static void integer(BufferedWriter writer, String key, long value) throws IOException {
+        writer.write("\t\t\t<key>" + key + "</key><integer>" + value + "</integer>\n");
+    }
+
+    private static void string(BufferedWriter writer, String key, String value) throws IOException {
+        writer.write("\t\t\t<key>" + key + "</key><string>" + value + "</string>\n");
+    }
+}
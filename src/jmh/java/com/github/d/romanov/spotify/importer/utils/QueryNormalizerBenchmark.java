@@ -0,0 +1,143 @@
+package com.github.d.romanov.spotify.importer.utils;
+
+import com.github.d.romanov.spotify.importer.model.Track;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link QueryNormalizer} against the regex path it replaced ({@code TrackUtils.fixFeatTags} and
+ * {@code TrackUtils.searchKey}, copied below), per track of a mix of plain, featuring and noisy titles.
+ * <p>
+ * Note that the regex path does less work: it only drops {@code (feat.} suffixes and collapses whitespace.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryNormalizerBenchmark {
+
+    private static final Track[] TRACKS = {
+            track("Bohemian Rhapsody", "Queen"),
+            track("Yesterday - Remastered 2009", "The Beatles"),
+            track("Sicko Mode (feat. Drake)", "Travis Scott"),
+            track("Stay With Me", "Sam Smith"),
+            track("Hotel California - 2013 Remaster", "Eagles"),
+            track("Despacito (Remix) [feat. Justin Bieber]", "Luis Fonsi, Daddy Yankee"),
+            track("Take On Me (2017 Remastered Version)", "a-ha"),
+            track("Purple Rain (Live at Syracuse)", "Prince"),
+            track("Dancing Queen", "ABBA"),
+            track("Lose Yourself - From \"8 Mile\" Soundtrack", "Eminem"),
+            track("Señorita", "Shawn Mendes ft Camila Cabello"),
+            track("Smells Like Teen Spirit", "Nirvana"),
+            track("One More Time (Radio Edit)", "Daft Punk"),
+            track("Édith's Song (Live Forever Mix)", "Björk"),
+            track("Blinding Lights", "The Weeknd"),
+            track("Wonderwall  -  Single  Version", "Oasis")
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void regexQuery(Blackhole blackhole) {
+        for (Track track : TRACKS) {
+            Track fixed = RegexPath.fixFeatTags(track);
+            blackhole.consume(fixed.trackName() + " " + fixed.artistName());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void normalizerQuery(Blackhole blackhole) {
+        for (Track track : TRACKS) {
+            blackhole.consume(QueryNormalizer.query(track));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void regexKey(Blackhole blackhole) {
+        for (Track track : TRACKS) {
+            blackhole.consume(RegexPath.searchKey(RegexPath.fixFeatTags(track)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void normalizerKey(Blackhole blackhole) {
+        for (Track track : TRACKS) {
+            blackhole.consume(QueryNormalizer.key(track));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void regexKeyHash(Blackhole blackhole) {
+        for (Track track : TRACKS) {
+            blackhole.consume(RegexPath.searchKeyHash(RegexPath.fixFeatTags(track)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void normalizerKeyHash(Blackhole blackhole) {
+        for (Track track : TRACKS) {
+            blackhole.consume(QueryNormalizer.keyHash(track));
+        }
+    }
+
+    private static Track track(String trackName, String artistName) {
+        return Track.builder()
+                .trackName(trackName)
+                .artistName(artistName)
+                .build();
+    }
+
+    /**
+     * Query, key and key hash as they were computed before {@link QueryNormalizer}
+     */
+    private static final class RegexPath {
+
+        private static final Pattern TRACK_NAME_PATTERN = Pattern.compile("(.+) \\(feat\\.");
+        private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+        static Track fixFeatTags(Track track) {
+            String trackName = track.trackName();
+            if (trackName != null && trackName.toLowerCase().contains("feat.")) {
+                Matcher trackMatcher = TRACK_NAME_PATTERN.matcher(trackName);
+                if (trackMatcher.find()) {
+                    return track.withTrackName(trackMatcher.group(1));
+                }
+            }
+            return track;
+        }
+
+        static String searchKey(Track track) {
+            String query = track.trackName() + " " + track.artistName();
+            return WHITESPACE_PATTERN.matcher(query.strip().toLowerCase()).replaceAll(" ");
+        }
+
+        static long searchKeyHash(Track track) {
+            String key = searchKey(track);
+            long hash = 0xCBF29CE484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+            }
+            return hash;
+        }
+    }
+}
@@ -1,63 +1,144 @@
 package com.github.d.romanov.spotify.importer.client;
 
+import com.github.d.romanov.spotify.importer.client.cache.CachedSearch;
+import com.github.d.romanov.spotify.importer.client.cache.CachedPlaylists;
+import com.github.d.romanov.spotify.importer.client.cache.InFlightSearches;
+import com.github.d.romanov.spotify.importer.client.cache.PlaylistCache;
+import com.github.d.romanov.spotify.importer.client.cache.SearchCache;
+import com.github.d.romanov.spotify.importer.client.codec.SearchTrackIdDecoder;
+import com.github.d.romanov.spotify.importer.metrics.ImportMetrics;
 import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
 import com.github.d.romanov.spotify.importer.model.dto.AddTracksToPlaylistRequest;
 import com.github.d.romanov.spotify.importer.model.dto.CreatePlaylistRequest;
 import com.github.d.romanov.spotify.importer.model.dto.Item;
-import com.github.d.romanov.spotify.importer.model.dto.ItemsWrapper;
 import com.github.d.romanov.spotify.importer.model.dto.Playlist;
+import com.github.d.romanov.spotify.importer.model.dto.PlaylistTracksResponse;
 import com.github.d.romanov.spotify.importer.model.dto.PlaylistsResponse;
-import com.github.d.romanov.spotify.importer.model.dto.SearchResponse;
+import com.github.d.romanov.spotify.importer.model.dto.SnapshotResponse;
+import com.github.d.romanov.spotify.importer.model.dto.TracksResponse;
+import com.github.d.romanov.spotify.importer.utils.QueryNormalizer;
 import com.github.d.romanov.spotify.importer.utils.TokenUtils;
+import com.github.d.romanov.spotify.importer.utils.TrackIdSet;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class SpotifyClient {
 
+    private static final SearchTrackIdDecoder SEARCH_TRACK_ID_DECODER = new SearchTrackIdDecoder();
+    private static final ResolvableType TRACK_ID_TYPE = ResolvableType.forClass(TrackId.class);
+    private static final int PLAYLIST_PAGE_SIZE = 100;
+    private static final int PLAYLISTS_PAGE_SIZE = 50;
+
     @Qualifier("spotifyWebClient")
     private final WebClient webClient;
+    private final SearchCache searchCache;
+    private final PlaylistCache playlistCache;
+    private final InFlightSearches inFlightSearches;
+    private final ImportMetrics importMetrics;
 
+    /**
+     * Cached results, including "not found" ones, are returned without a request to Spotify.
+     * Concurrent searches for the same query share a single request. Failed searches are not cached.
+     */
     public Mono<Track> searchTrackId(Track track) {
+        String key = QueryNormalizer.key(track);
+        CachedSearch cached = searchCache.get(key);
+        if (cached != null) {
+            return Mono.just(cached.id() != null ? track.withId(cached.id()) : track);
+        }
+        return inFlightSearches.search(key, () -> search(track, key))
+                .map(track::withId)
+                .defaultIfEmpty(track);
+    }
+
+    private Mono<TrackId> search(Track track, String key) {
         log.debug("Searching for {}", track);
         return webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/v1/search")
-                        .queryParam("q", track.getTrackName() + " " + track.getArtistName())
+                        .queryParam("q", QueryNormalizer.query(track))
                         .queryParam("type", "track")
                         .queryParam("limit", "1")
                         .build())
                 .retrieve()
-                .bodyToMono(SearchResponse.class)
-                .map(searchResponse -> {
-                    Optional.ofNullable(searchResponse)
-                            .map(SearchResponse::tracks)
-                            .map(ItemsWrapper::items)
-                            .filter(items -> !items.isEmpty())
-                            .map(items -> items.get(0))
-                            .map(Item::id)
-                            .ifPresent(track::setId);
-                    return track;
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> SEARCH_TRACK_ID_DECODER.decodeToMono(body, TRACK_ID_TYPE, MediaType.APPLICATION_JSON,
+                        Map.of()))
+                .transform(importMetrics::timeSearch)
+                .doOnSuccess(id -> searchCache.put(key, id));
+    }
+
+    /**
+     * Validates ids of tracks listed by URI or link, up to 50 tracks per request.
+     *
+     * @return Same tracks, without id if it doesn't exist
+     */
+    public Mono<List<Track>> getTracks(List<Track> tracks) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/v1/tracks")
+                        .queryParam("ids", tracks.stream()
+                                .map(track -> track.id().toString())
+                                .collect(Collectors.joining(",")))
+                        .build())
+                .retrieve()
+                .bodyToMono(TracksResponse.class)
+                .map(tracksResponse -> {
+                    List<Item> items = Optional.ofNullable(tracksResponse.tracks()).orElse(List.of());
+                    List<Track> validated = new ArrayList<>(tracks.size());
+                    for (int i = 0; i < tracks.size(); i++) {
+                        Item item = i < items.size() ? items.get(i) : null;
+                        TrackId id = item != null && item.id() != null ? TrackId.of(item.id()) : null;
+                        validated.add(tracks.get(i).withId(id));
+                    }
+                    return validated;
                 });
     }
 
-    public Mono<Boolean> addToLikedTracks(List<String> trackIds) {
+    /**
+     * @return Whether each track is already in Liked Songs, in order of requested ids, up to 50 ids per request
+     */
+    public Mono<List<Boolean>> containsLikedTracks(List<TrackId> trackIds) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/v1/me/tracks/contains")
+                        .queryParam("ids", trackIds.stream()
+                                .map(TrackId::toString)
+                                .collect(Collectors.joining(",")))
+                        .build())
+                .retrieve()
+                .bodyToFlux(Boolean.class)
+                .collectList();
+    }
+
+    public Mono<Boolean> addToLikedTracks(List<TrackId> trackIds) {
         return webClient.put()
                 .uri(uriBuilder -> uriBuilder
                         .path("/v1/me/tracks")
-                        .queryParam("ids", String.join(",", trackIds))
+                        .queryParam("ids", trackIds.stream()
+                                .map(TrackId::toString)
+                                .collect(Collectors.joining(",")))
                         .build())
                 .retrieve()
                 .toEntity(Void.class)
@@ -65,14 +146,54 @@ public class SpotifyClient {
                 .map(HttpStatusCode::is2xxSuccessful);
     }
 
-    public Mono<PlaylistsResponse> getUserPlaylists() {
+    /**
+     * Playlists are served from {@link PlaylistCache} while fresh. Otherwise the first page tells the number
+     * of playlists, and the rest of pages are requested concurrently. Pages of stale cached playlists are requested
+     * with {@code If-None-Match}, so unchanged ones are not downloaded again.
+     *
+     * @return All playlists of the user, in Spotify order
+     */
+    public Mono<List<Playlist>> getUserPlaylists() {
+        return TokenUtils.getPrincipalName()
+                .flatMap(principal -> {
+                    CachedPlaylists cached = playlistCache.get(principal);
+                    if (cached != null && playlistCache.isFresh(cached)) {
+                        return Mono.just(cached.playlists());
+                    }
+                    return getPlaylistsPage(0, cached)
+                            .flatMap(firstPage -> Flux.range(1, (firstPage.total() - 1) / PLAYLISTS_PAGE_SIZE)
+                                    .flatMapSequential(page -> getPlaylistsPage(page, cached))
+                                    .startWith(firstPage)
+                                    .collectList())
+                            .map(pages -> playlistCache.put(principal, pages).playlists());
+                });
+    }
+
+    private Mono<CachedPlaylists.Page> getPlaylistsPage(int index, CachedPlaylists cached) {
+        CachedPlaylists.Page cachedPage = cached != null ? cached.page(index) : null;
         return webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/v1/me/playlists")
-                        .queryParam("limit", 50)
+                        .queryParam("limit", PLAYLISTS_PAGE_SIZE)
+                        .queryParam("offset", index * PLAYLISTS_PAGE_SIZE)
                         .build())
+                .headers(headers -> {
+                    if (cachedPage != null && cachedPage.etag() != null) {
+                        headers.setIfNoneMatch(cachedPage.etag());
+                    }
+                })
+                .attribute(SpotifyClientFilter.INTERACTIVE_ATTRIBUTE, true)
                 .retrieve()
-                .bodyToMono(PlaylistsResponse.class);
+                .toEntity(PlaylistsResponse.class)
+                .map(response -> {
+                    if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED) && cachedPage != null) {
+                        return cachedPage;
+                    }
+                    PlaylistsResponse body = Optional.ofNullable(response.getBody())
+                            .orElseThrow(() -> new IllegalStateException("Empty playlists response"));
+                    return new CachedPlaylists.Page(response.getHeaders().getETag(), body.total(),
+                            Optional.ofNullable(body.items()).orElse(List.of()));
+                });
     }
 
     public Mono<Playlist> createPlaylist(CreatePlaylistRequest request) {
@@ -81,24 +202,58 @@ public class SpotifyClient {
                         .uri(uriBuilder -> uriBuilder
                                 .path("/v1/users/" + oAuth2User.getAttribute("id") + "/playlists")
                                 .build())
+                        .attribute(SpotifyClientFilter.INTERACTIVE_ATTRIBUTE, true)
                         .contentType(MediaType.APPLICATION_JSON)
                         .bodyValue(request)
                         .retrieve()
-                        .bodyToMono(Playlist.class));
+                        .bodyToMono(Playlist.class)
+                        .doOnSuccess(playlist -> playlistCache.invalidate(oAuth2User.getName())));
+    }
+
+    /**
+     * First page tells the number of items, the rest of pages are requested concurrently
+     *
+     * @return Ids of all tracks in the playlist
+     */
+    public Mono<TrackIdSet> getPlaylistTrackIds(String playlistId) {
+        return getPlaylistTracks(playlistId, 0)
+                .flatMap(firstPage -> Flux.range(1, (firstPage.total() - 1) / PLAYLIST_PAGE_SIZE)
+                        .flatMap(page -> getPlaylistTracks(playlistId, page * PLAYLIST_PAGE_SIZE))
+                        .startWith(firstPage)
+                        .reduce(new TrackIdSet(firstPage.total()), (trackIds, page) -> {
+                            Optional.ofNullable(page.items()).orElse(List.of()).stream()
+                                    .map(PlaylistTracksResponse.PlaylistItem::track)
+                                    .filter(track -> track != null && track.id() != null
+                                            && TrackId.isValid(track.id()))
+                                    .forEach(track -> trackIds.add(TrackId.of(track.id())));
+                            return trackIds;
+                        }));
     }
 
-    public Mono<Boolean> addTracksToPlaylist(AddTracksToPlaylistRequest request, String playlistId) {
+    private Mono<PlaylistTracksResponse> getPlaylistTracks(String playlistId, int offset) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/v1/playlists/" + playlistId + "/tracks")
+                        .queryParam("fields", "total,items(track(id))")
+                        .queryParam("limit", PLAYLIST_PAGE_SIZE)
+                        .queryParam("offset", offset)
+                        .build())
+                .retrieve()
+                .bodyToMono(PlaylistTracksResponse.class);
+    }
+
+    /**
+     * @return Snapshot id of the playlist version with the tracks added
+     */
+    public Mono<String> addTracksToPlaylist(AddTracksToPlaylistRequest request, String playlistId) {
         return webClient.post()
                 .uri(uriBuilder -> uriBuilder
                         .path("/v1/playlists/" + playlistId + "/tracks")
-                        .queryParam("playlist_id", playlistId)
-                        .queryParam("position", "0")
                         .build())
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(request)
                 .retrieve()
-                .toEntity(Void.class)
-                .map(ResponseEntity::getStatusCode)
-                .map(HttpStatusCode::is2xxSuccessful);
+                .bodyToMono(SnapshotResponse.class)
+                .map(SnapshotResponse::snapshotId);
     }
 }
@@ -1,9 +1,13 @@
 package com.github.d.romanov.spotify.importer.client;
 
+import com.github.d.romanov.spotify.importer.client.limiter.AdaptiveLimiter;
+import com.github.d.romanov.spotify.importer.client.limiter.Permit;
+import com.github.d.romanov.spotify.importer.client.limiter.RequestRateLimiter;
+import com.github.d.romanov.spotify.importer.metrics.ImportMetrics;
+import com.github.d.romanov.spotify.importer.model.ImportProgress;
+import com.github.d.romanov.spotify.importer.utils.TokenUtils;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
-import io.github.resilience4j.ratelimiter.RateLimiter;
 import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
-import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpRequest;
@@ -14,22 +18,19 @@ import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.ExchangeFunction;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 import reactor.util.retry.Retry;
 
 import java.net.URI;
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Spotify API has (<a href="https://developer.spotify.com/documentation/web-api/concepts/rate-limits">rate limit</a>),
  * but they don't specify it explicitly. So if we receive TooManyRequests response, we should limit our request rate.
- * It is implemented via {@link RateLimiter}, which allows dynamically adjust rate (decrease in our case).
- * <p>
- * poolCountdown is used to prevent dramatic rate decrease, because requests are made in parallel,
- * and all requests can receive TooManyRequests response.
+ * It is implemented via {@link RequestRateLimiter} for request rate and {@link AdaptiveLimiter} for requests in flight,
+ * which adjusts both limits from responses: decreases them on TooManyRequests and slow responses,
+ * and increases them back while requests succeed.
  * <p>
  * {@link CircuitBreaker} is used to prevent any requests towards Spotify API during "Retry-After" wait period.
  */
@@ -39,19 +40,41 @@ import java.util.concurrent.atomic.AtomicInteger;
 @RequiredArgsConstructor
 public class SpotifyClientFilter implements ExchangeFilterFunction {
 
-    private final RateLimiter spotifyRateLimiter;
+    /**
+     * Marks requests a user waits for (i.e. page rendering), they are sent before bulk import requests
+     */
+    public static final String INTERACTIVE_ATTRIBUTE = SpotifyClientFilter.class.getName() + ".interactive";
+    private static final String ANONYMOUS = "anonymous";
+
+    private final RequestRateLimiter requestRateLimiter;
     private final CircuitBreaker spotifyCircuitBreaker;
-    private final AtomicInteger poolCountdown = new AtomicInteger(Schedulers.DEFAULT_POOL_SIZE);
+    private final AdaptiveLimiter adaptiveLimiter;
+    private final ImportMetrics importMetrics;
 
     @Override
     public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
-        return next.exchange(request)
-                .flatMap(clientResponse -> Mono.just(clientResponse)
-                        .filter(response -> response.statusCode().isError())
-                        .flatMap(ClientResponse::createException)
-                        .flatMap(Mono::error)
-                        .thenReturn(clientResponse))
-                .transformDeferred(RateLimiterOperator.of(spotifyRateLimiter))
+        boolean interactive = request.attribute(INTERACTIVE_ATTRIBUTE).isPresent();
+        return TokenUtils.getPrincipalName()
+                .defaultIfEmpty(ANONYMOUS)
+                .flatMap(principal -> {
+                    Permit permit = new Permit(principal, interactive);
+                    //slot is taken before rate limiter permission, so that fair queue decides who goes next
+                    return adaptiveLimiter.acquire(permit)
+                            .then(requestRateLimiter.acquirePermission())
+                            .then(Mono.defer(() -> {
+                                permit.markStarted();
+                                return next.exchange(request);
+                            }))
+                            .flatMap(clientResponse -> Mono.just(clientResponse)
+                                    .filter(response -> response.statusCode().isError())
+                                    .flatMap(ClientResponse::createException)
+                                    .flatMap(Mono::error)
+                                    .thenReturn(clientResponse))
+                            .doOnSuccess(response -> permit.setOutcome(Permit.Outcome.SUCCESS))
+                            .doOnError(WebClientResponseException.TooManyRequests.class,
+                                    e -> permit.setOutcome(Permit.Outcome.THROTTLED))
+                            .doFinally(signal -> adaptiveLimiter.release(permit));
+                })
                 .transformDeferred(CircuitBreakerOperator.of(spotifyCircuitBreaker))
                 .retryWhen(Retry.indefinitely()
                         .filter(throwable -> throwable instanceof WebClientResponseException.TooManyRequests)
@@ -75,18 +98,14 @@ public class SpotifyClientFilter implements ExchangeFilterFunction {
                                     })
                                     .orElse(2L);
 
-                            if (poolCountdown.decrementAndGet() <= 0) {
-                                spotifyRateLimiter.changeLimitForPeriod(
-                                        Math.max(1, spotifyRateLimiter.getRateLimiterConfig().getLimitForPeriod() * 9 / 10));
-                                spotifyRateLimiter.changeTimeoutDuration(Duration.ofSeconds(timeout));
-                                poolCountdown.set(Schedulers.DEFAULT_POOL_SIZE);
-                            }
+                            requestRateLimiter.onRetryAfter(Duration.ofSeconds(timeout));
+                            importMetrics.onThrottled(Duration.ofSeconds(timeout));
 
-                            log.debug("Current rate limit: {} requests per {}",
-                                    spotifyRateLimiter.getRateLimiterConfig().getLimitForPeriod(),
-                                    spotifyRateLimiter.getRateLimiterConfig().getLimitRefreshPeriod());
-
-                            return Mono.delay(Duration.ofSeconds(timeout))
+                            return Mono.deferContextual(context -> {
+                                        context.<ImportProgress>getOrEmpty(ImportProgress.class)
+                                                .ifPresent(ImportProgress::onThrottled);
+                                        return Mono.delay(Duration.ofSeconds(timeout));
+                                    })
                                     .doOnNext(aLong -> {
                                         spotifyCircuitBreaker.transitionToClosedState();
                                         log.debug("Circuit breaker is {}", spotifyCircuitBreaker.getState());
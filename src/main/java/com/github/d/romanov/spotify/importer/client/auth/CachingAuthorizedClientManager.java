@@ -0,0 +1,123 @@
+package com.github.d.romanov.spotify.importer.client.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Caches authorized client (access token) of each user in memory, in front of the manager that loads it from
+ * the repository and refreshes it, so that requests of an import don't go through the repository one by one.
+ * <p>
+ * Cached token is used while it's valid for longer than {@code spotify.token.refresh-ahead}. After that, the first
+ * request starts a refresh in background and keeps using the current token, until it's valid for less than
+ * {@code min-validity}, then requests wait for the refresh. Only one load or refresh of a user is in flight at
+ * a time, so parallel searches of an import don't race each other to the token endpoint.
+ * <p>
+ * Delegate must refresh tokens expiring within {@code refresh-ahead}, otherwise it returns the same token.
+ * Cached client of a user must be evicted with {@link #evict(Authentication)} on login and logout, so that
+ * the token of a new login is used, and no token is used after logout.
+ */
+
+@Slf4j
+public class CachingAuthorizedClientManager implements ReactiveOAuth2AuthorizedClientManager {
+
+    private final ReactiveOAuth2AuthorizedClientManager delegate;
+    private final SpotifyProps.Token props;
+    private final Clock clock;
+    private final Cache<String, CachedClient> cache;
+
+    public CachingAuthorizedClientManager(ReactiveOAuth2AuthorizedClientManager delegate, SpotifyProps.Token props) {
+        this.delegate = delegate;
+        this.props = props;
+        this.clock = Clock.systemUTC();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(props.getMaxSize())
+                .expireAfterAccess(props.getIdleTtl())
+                .build();
+    }
+
+    @Override
+    public Mono<OAuth2AuthorizedClient> authorize(OAuth2AuthorizeRequest request) {
+        //re-authorization of a given client and anonymous requests go straight to the delegate
+        if (request.getAuthorizedClient() != null || request.getPrincipal() instanceof AnonymousAuthenticationToken) {
+            return delegate.authorize(request);
+        }
+        return Mono.deferContextual(context -> {
+            CachedClient cached = cache.get(key(request.getClientRegistrationId(), request.getPrincipal().getName()),
+                    key -> new CachedClient());
+            OAuth2AuthorizedClient client = cached.client;
+            Instant now = clock.instant();
+            if (client == null || !isValidAfter(client, now.plus(props.getMinValidity()))) {
+                return load(cached, request, context);
+            }
+            if (!isValidAfter(client, now.plus(props.getRefreshAhead())) && now.toEpochMilli() >= cached.retryAt) {
+                //errors are logged by the load itself
+                load(cached, request, context).subscribe(refreshed -> {}, throwable -> {});
+            }
+            return Mono.just(client);
+        });
+    }
+
+    /**
+     * Drops cached client of the user, a load already in flight doesn't put it back
+     */
+    public void evict(Authentication authentication) {
+        if (authentication instanceof OAuth2AuthenticationToken token) {
+            cache.invalidate(key(token.getAuthorizedClientRegistrationId(), token.getName()));
+        }
+    }
+
+    /**
+     * @return Load of the client already in flight, or a new one
+     */
+    private Mono<OAuth2AuthorizedClient> load(CachedClient cached, OAuth2AuthorizeRequest request, ContextView context) {
+        Mono<OAuth2AuthorizedClient> inFlight = cached.inFlight.get();
+        if (inFlight != null) {
+            return inFlight;
+        }
+        Mono<OAuth2AuthorizedClient> load = delegate.authorize(request)
+                //started by one request, but joined by others, so it's not cancelled with the first one
+                .contextWrite(context)
+                .doOnNext(client -> cached.client = client)
+                .doOnError(throwable -> {
+                    cached.retryAt = clock.millis() + props.getRetryInterval().toMillis();
+                    log.warn("Failed to authorize {} client of {}", request.getClientRegistrationId(),
+                            request.getPrincipal().getName(), throwable);
+                })
+                .doFinally(signal -> cached.inFlight.set(null))
+                .cache();
+        if (!cached.inFlight.compareAndSet(null, load)) {
+            return load(cached, request, context);
+        }
+        load.subscribe(client -> {}, throwable -> {});
+        return load;
+    }
+
+    private static String key(String clientRegistrationId, String principalName) {
+        return clientRegistrationId + '\0' + principalName;
+    }
+
+    private static boolean isValidAfter(OAuth2AuthorizedClient client, Instant instant) {
+        Instant expiresAt = client.getAccessToken().getExpiresAt();
+        return expiresAt == null || expiresAt.isAfter(instant);
+    }
+
+    private static class CachedClient {
+        private final AtomicReference<Mono<OAuth2AuthorizedClient>> inFlight = new AtomicReference<>();
+        private volatile OAuth2AuthorizedClient client;
+        private volatile long retryAt;
+    }
+}
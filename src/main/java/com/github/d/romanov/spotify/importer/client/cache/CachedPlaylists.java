@@ -0,0 +1,38 @@
+package com.github.d.romanov.spotify.importer.client.cache;
+
+import com.github.d.romanov.spotify.importer.model.dto.Playlist;
+
+import java.util.List;
+
+/**
+ * @param pages     Pages of user playlists in order, each with ETag for conditional requests
+ * @param fetchedAt Epoch millis when pages were fetched or revalidated
+ */
+public record CachedPlaylists(
+        List<Page> pages,
+        long fetchedAt
+) {
+
+    public List<Playlist> playlists() {
+        return pages.stream()
+                .flatMap(page -> page.playlists().stream())
+                .toList();
+    }
+
+    /**
+     * @return Cached page at the index, {@code null} if there is none
+     */
+    public Page page(int index) {
+        return index < pages.size() ? pages.get(index) : null;
+    }
+
+    /**
+     * @param etag  ETag of the page response, {@code null} if the API didn't send one
+     * @param total Number of playlists of the user
+     */
+    public record Page(
+            String etag,
+            int total,
+            List<Playlist> playlists
+    ) {}
+}
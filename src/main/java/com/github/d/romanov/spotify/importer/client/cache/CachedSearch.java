@@ -0,0 +1,12 @@
+package com.github.d.romanov.spotify.importer.client.cache;
+
+import com.github.d.romanov.spotify.importer.model.TrackId;
+
+/**
+ * @param id        Found track id, {@code null} if track was not found
+ * @param expiresAt Epoch millis
+ */
+public record CachedSearch(
+        TrackId id,
+        long expiresAt
+) {}
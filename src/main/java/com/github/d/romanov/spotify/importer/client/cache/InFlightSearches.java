@@ -0,0 +1,134 @@
+package com.github.d.romanov.spotify.importer.client.cache;
+
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight registry of searches, keyed by normalized search query.
+ * <p>
+ * The first subscriber for a key becomes the leader and starts the search in its own context, others subscribe
+ * to the leader's result instead of sending the same request. The search runs detached from the leader's
+ * subscription, so when the leader's import is cancelled or fails, followers from other imports still get the result.
+ * Subscribers are counted, and the search is disposed when the last of them cancels, so searches of cancelled
+ * imports don't keep retrying and holding rate limiter permits.
+ * <p>
+ * The registry is a lock-free {@code putIfAbsent} on {@link ConcurrentHashMap}, whose bins are updated with CAS,
+ * so unrelated keys never contend. Entry is removed before the result is published, so the next search after
+ * completion starts a new flight.
+ */
+
+@Slf4j
+@Component
+public class InFlightSearches {
+
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param search Search to run if there is no search in flight for the key, empty if track is not found
+     * @return Found track id, empty if not found
+     */
+    public Mono<TrackId> search(String key, Supplier<Mono<TrackId>> search) {
+        return Mono.deferContextual(context -> {
+            while (true) {
+                Flight flight = new Flight(key);
+                Flight leader = inFlight.putIfAbsent(key, flight);
+                if (leader == null) {
+                    searches.increment();
+                    flight.start(search.get().contextWrite(context));
+                    return flight.subscribe();
+                }
+                if (leader.join()) {
+                    coalesced.increment();
+                    return leader.subscribe();
+                }
+                //all subscribers of the leader have just cancelled, its search is disposed
+                inFlight.remove(key, leader);
+            }
+        });
+    }
+
+    /**
+     * @return Number of searches actually sent
+     */
+    public long getSearchCount() {
+        return searches.sum();
+    }
+
+    /**
+     * @return Number of searches that joined a search in flight instead of sending a request
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private class Flight {
+
+        private final String key;
+        private final Sinks.One<TrackId> sink = Sinks.one();
+        /**
+         * Subscribers that haven't cancelled yet, flight can't be joined once it drops to zero
+         */
+        private final AtomicInteger subscribers = new AtomicInteger(1);
+        private final Disposable.Swap search = Disposables.swap();
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        private void start(Mono<TrackId> search) {
+            this.search.update(search
+                    .doOnSuccess(id -> {
+                        inFlight.remove(key, this);
+                        if (id != null) {
+                            sink.tryEmitValue(id);
+                        } else {
+                            sink.tryEmitEmpty();
+                        }
+                    })
+                    .doOnError(e -> {
+                        inFlight.remove(key, this);
+                        sink.tryEmitError(e);
+                    })
+                    .subscribe(id -> {}, e -> {}));
+        }
+
+        private boolean join() {
+            int count;
+            do {
+                count = subscribers.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!subscribers.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        private Mono<TrackId> subscribe() {
+            return sink.asMono().doOnCancel(this::leave);
+        }
+
+        private void leave() {
+            if (subscribers.decrementAndGet() == 0) {
+                inFlight.remove(key, this);
+                search.dispose();
+                log.debug("Search {} is cancelled by all subscribers", key);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.d.romanov.spotify.importer.client.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.List;
+
+/**
+ * Cache of playlists of each user, keyed by principal name (Spotify user id).
+ * <p>
+ * Playlists are served from cache for {@code ttl}. After that the entry is still kept for {@code etag-ttl},
+ * so that its pages are revalidated with conditional requests, and only changed pages are downloaded again.
+ */
+
+@Component
+public class PlaylistCache {
+
+    private final SpotifyProps.PlaylistCache props;
+    private final Clock clock;
+    private final Cache<String, CachedPlaylists> cache;
+
+    public PlaylistCache(SpotifyProps spotifyProps) {
+        this.props = spotifyProps.getPlaylistCache();
+        this.clock = Clock.systemUTC();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(props.getMaxSize())
+                .expireAfterWrite(props.getEtagTtl())
+                .build();
+    }
+
+    /**
+     * @return Cached playlists, {@code null} if there are none, possibly not fresh
+     */
+    public CachedPlaylists get(String principal) {
+        return cache.getIfPresent(principal);
+    }
+
+    public boolean isFresh(CachedPlaylists playlists) {
+        return clock.millis() - playlists.fetchedAt() < props.getTtl().toMillis();
+    }
+
+    public CachedPlaylists put(String principal, List<CachedPlaylists.Page> pages) {
+        CachedPlaylists playlists = new CachedPlaylists(pages, clock.millis());
+        cache.put(principal, playlists);
+        return playlists;
+    }
+
+    /**
+     * Drops cached playlists of the user, i.e. when a playlist is created
+     */
+    public void invalidate(String principal) {
+        cache.invalidate(principal);
+    }
+}
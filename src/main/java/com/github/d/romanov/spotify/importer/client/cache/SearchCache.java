@@ -0,0 +1,105 @@
+package com.github.d.romanov.spotify.importer.client.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of search results, keyed by normalized search query (see {@code QueryNormalizer.key}).
+ * <p>
+ * Memory tier is a bounded Caffeine cache, evicting least recently used entries and expiring each entry after
+ * {@code ttl}, or shorter {@code not-found-ttl} for tracks that were not found.
+ * If enabled, every new entry is also appended to {@link SearchCacheLog}, which warms up the memory tier on startup.
+ */
+
+@Slf4j
+@Component
+public class SearchCache {
+
+    private final SpotifyProps.SearchCache props;
+    private final Clock clock;
+    private final Cache<String, CachedSearch> cache;
+    private final SearchCacheLog cacheLog;
+
+    public SearchCache(SpotifyProps spotifyProps) {
+        this.props = spotifyProps.getSearchCache();
+        this.clock = Clock.systemUTC();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(props.getMaxSize())
+                .expireAfter(new EntryExpiry(clock))
+                .build();
+        this.cacheLog = props.getDisk().isEnabled() ? new SearchCacheLog(props.getDisk()) : null;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (cacheLog != null) {
+            long now = clock.millis();
+            cacheLog.load((key, search) -> {
+                if (search.expiresAt() > now) {
+                    cache.put(key, search);
+                }
+            });
+            log.debug("Loaded {} cached searches", cache.estimatedSize());
+            cacheLog.start(this::entries);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (cacheLog != null) {
+            cacheLog.close();
+        }
+    }
+
+    /**
+     * @return Cached search, {@code null} if the query was not searched yet or the result expired
+     */
+    public CachedSearch get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * @param id Found track id, {@code null} if not found
+     */
+    public void put(String key, TrackId id) {
+        long ttl = (id != null ? props.getTtl() : props.getNotFoundTtl()).toMillis();
+        CachedSearch search = new CachedSearch(id, clock.millis() + ttl);
+        cache.put(key, search);
+        if (cacheLog != null) {
+            cacheLog.append(key, search);
+        }
+    }
+
+    private Map<String, CachedSearch> entries() {
+        return cache.asMap();
+    }
+
+    private record EntryExpiry(Clock clock) implements Expiry<String, CachedSearch> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedSearch value, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.expiresAt() - clock.millis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedSearch value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedSearch value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.d.romanov.spotify.importer.client.cache;
+
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Append-only log of search cache entries, one {@code key \t id \t expiresAt} line each ({@code id} is "-"
+ * for tracks that were not found). Later lines override earlier ones.
+ * <p>
+ * Entries are queued and written by a single background worker every {@code flush-interval}, so searches never
+ * wait for disk. When the log grows past {@code max-size}, it is rewritten with live entries of the memory tier.
+ */
+
+@Slf4j
+class SearchCacheLog {
+
+    private static final char SEPARATOR = '\t';
+    private static final String NOT_FOUND = "-";
+
+    private final SpotifyProps.SearchCache.Disk props;
+    private final Path path;
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    private final Scheduler scheduler = Schedulers.newSingle("search-cache-log");
+    private Supplier<Map<String, CachedSearch>> entries;
+    private Disposable flushTask;
+
+    SearchCacheLog(SpotifyProps.SearchCache.Disk props) {
+        this.props = props;
+        this.path = Path.of(props.getPath());
+    }
+
+    void load(BiConsumer<String, CachedSearch> consumer) {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int idEnd = line.lastIndexOf(SEPARATOR);
+                int keyEnd = idEnd > 0 ? line.lastIndexOf(SEPARATOR, idEnd - 1) : -1;
+                if (keyEnd <= 0) {
+                    continue;
+                }
+                String id = line.substring(keyEnd + 1, idEnd);
+                try {
+                    consumer.accept(line.substring(0, keyEnd), new CachedSearch(
+                            NOT_FOUND.equals(id) ? null : TrackId.of(id),
+                            Long.parseLong(line.substring(idEnd + 1))));
+                } catch (IllegalArgumentException e) {
+                    log.debug("Skipped corrupted search cache line: {}", line);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            log.debug("Search cache log {} doesn't exist yet", path);
+        } catch (IOException e) {
+            log.warn("Failed to load search cache log {}", path, e);
+        }
+    }
+
+    /**
+     * @param entries Live entries to compact the log to
+     */
+    void start(Supplier<Map<String, CachedSearch>> entries) {
+        this.entries = entries;
+        this.flushTask = scheduler.schedulePeriodically(this::flush,
+                props.getFlushInterval().toMillis(), props.getFlushInterval().toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    void append(String key, CachedSearch search) {
+        pending.add(format(key, search));
+    }
+
+    void close() {
+        if (flushTask != null) {
+            flushTask.dispose();
+        }
+        scheduler.dispose();
+        flush();
+    }
+
+    private synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                String line;
+                while ((line = pending.poll()) != null) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            if (entries != null && Files.size(path) > props.getMaxSize().toBytes()) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write search cache log {}", path, e);
+        }
+    }
+
+    private void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, CachedSearch> entry : entries.get().entrySet()) {
+                if (entry.getValue().expiresAt() > now) {
+                    writer.write(format(entry.getKey(), entry.getValue()));
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Search cache log compacted to {} bytes", Files.size(path));
+    }
+
+    private static String format(String key, CachedSearch search) {
+        return key + SEPARATOR + (search.id() != null ? search.id().toString() : NOT_FOUND)
+                + SEPARATOR + search.expiresAt();
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.d.romanov.spotify.importer.client.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes id of the first track of search response ({@code tracks.items[0].id}), without binding the response.
+ * <p>
+ * Response buffers are fed to Jackson non-blocking parser as they arrive, walking tokens only until the id is found.
+ * The rest of the response (album art, markets, artists and other items) is drained and released without parsing,
+ * so the connection is returned to the pool instead of being closed.
+ */
+public class SearchTrackIdDecoder implements Decoder<TrackId> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        return TrackId.class.equals(elementType.toClass())
+                && (mimeType == null || MediaType.APPLICATION_JSON.isCompatibleWith(mimeType));
+    }
+
+    @Override
+    public Flux<TrackId> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType, MimeType mimeType,
+            Map<String, Object> hints) {
+        return Flux.from(decodeToMono(inputStream, elementType, mimeType, hints));
+    }
+
+    /**
+     * @return Id of the first track, empty if nothing was found
+     */
+    @Override
+    public Mono<TrackId> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+            MimeType mimeType, Map<String, Object> hints) {
+        return Mono.defer(() -> {
+            FirstTrackIdReader reader = new FirstTrackIdReader();
+            return Flux.from(inputStream)
+                    .doOnNext(dataBuffer -> {
+                        try {
+                            reader.feed(dataBuffer);
+                        } finally {
+                            DataBufferUtils.release(dataBuffer);
+                        }
+                    })
+                    .then(Mono.fromCallable(reader::getTrackId))
+                    .doFinally(signal -> reader.close());
+        }).doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    @Override
+    public List<MimeType> getDecodableMimeTypes() {
+        return List.of(MediaType.APPLICATION_JSON);
+    }
+
+    private static class FirstTrackIdReader {
+
+        private JsonParser parser;
+        private boolean done;
+        private TrackId trackId;
+
+        FirstTrackIdReader() {
+            try {
+                parser = JSON_FACTORY.createNonBlockingByteBufferParser();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to create JSON parser", e);
+            }
+        }
+
+        TrackId getTrackId() {
+            return trackId;
+        }
+
+        void feed(DataBuffer dataBuffer) {
+            if (done) {
+                return;
+            }
+            try (DataBuffer.ByteBufferIterator iterator = dataBuffer.readableByteBuffers()) {
+                while (iterator.hasNext() && !done) {
+                    ByteBuffer byteBuffer = iterator.next();
+                    ((ByteBufferFeeder) parser.getNonBlockingInputFeeder()).feedInput(byteBuffer);
+                    readAvailable();
+                }
+            } catch (IOException e) {
+                throw new DecodingException("Failed to decode search response", e);
+            }
+        }
+
+        void close() {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+                // parser doesn't own any input
+            }
+        }
+
+        private void readAvailable() throws IOException {
+            JsonToken token;
+            while (!done && (token = parser.nextToken()) != JsonToken.NOT_AVAILABLE && token != null) {
+                JsonStreamContext context = parser.getParsingContext();
+                if (token == JsonToken.VALUE_STRING && "id".equals(parser.currentName()) && isFirstItem(context)) {
+                    String id = parser.getText();
+                    trackId = TrackId.isValid(id) ? TrackId.of(id) : null;
+                    done = true;
+                } else if (token == JsonToken.END_ARRAY && isItems(context)) {
+                    //items are empty, or the first one has no id
+                    done = true;
+                }
+            }
+        }
+
+        /**
+         * @return Whether context is the object of {@code tracks.items[0]}
+         */
+        private static boolean isFirstItem(JsonStreamContext context) {
+            JsonStreamContext items = context.getParent();
+            return context.inObject() && items != null && items.inArray() && items.getCurrentIndex() == 0
+                    && isItems(items.getParent());
+        }
+
+        /**
+         * @param context Object holding an array
+         * @return Whether the array is {@code tracks.items}
+         */
+        private static boolean isItems(JsonStreamContext context) {
+            if (context == null || !context.inObject() || !"items".equals(context.getCurrentName())) {
+                return false;
+            }
+            JsonStreamContext tracks = context.getParent();
+            return tracks != null && tracks.inObject() && "tracks".equals(tracks.getCurrentName())
+                    && tracks.getParent() != null && tracks.getParent().inRoot();
+        }
+    }
+}
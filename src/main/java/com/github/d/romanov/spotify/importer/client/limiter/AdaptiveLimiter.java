@@ -0,0 +1,178 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD controller of requests to Spotify API, driving both the number of requests in flight and
+ * {@link RequestRateLimiter} limit for period.
+ * <p>
+ * Every successful response increases concurrency limit by {@code 1/limit} and rate by {@code 1/rate},
+ * so each of them grows by one per round of requests, up to configured maximum (initial rate limiter limit for rate).
+ * 429 Too Many Requests multiplies both by {@code backoff-ratio}. Response slower than {@code latency-tolerance}
+ * times the minimal latency of recent requests means Spotify starts to queue requests, so only concurrency limit
+ * is multiplied by {@code latency-backoff-ratio}.
+ * <p>
+ * A burst of parallel requests hitting the limit gets a burst of 429s, so limits are decreased at most once
+ * per burst: responses to requests started before the last decrease are not counted.
+ * Limits keep probing up as soon as requests succeed again, so throughput settles near the actual server limit.
+ * <p>
+ * Requests waiting for a slot are queued fairly between users, see {@link FairQueue}. Wait time is published
+ * as {@code spotify.requests.wait} timer by queue ({@code interactive} or {@code bulk}), per user only via
+ * {@link #getQueueStats(int)}, so the number of time series doesn't grow with users.
+ */
+
+@Slf4j
+@Component
+public class AdaptiveLimiter {
+
+    private final SpotifyProps.Limiter props;
+    private final RequestRateLimiter rateLimiter;
+    private final int maxRate;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final FairQueue waiters;
+
+    private volatile double limit;
+    private double rate;
+    private long minLatency = Long.MAX_VALUE;
+    private long windowMinLatency = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecrease = System.nanoTime();
+
+    public AdaptiveLimiter(SpotifyProps spotifyProps, RequestRateLimiter rateLimiter, MeterRegistry registry) {
+        this.props = spotifyProps.getLimiter();
+        this.waiters = new FairQueue(spotifyProps.getFairQueue(), waitTimer("interactive", registry),
+                waitTimer("bulk", registry));
+        this.rateLimiter = rateLimiter;
+        this.maxRate = rateLimiter.getLimitForPeriod();
+        this.limit = props.getInitialConcurrency();
+        this.rate = maxRate;
+    }
+
+    /**
+     * Waits for a free slot. Every acquired permit must be released with {@link #release(Permit)},
+     * even if waiting was cancelled.
+     */
+    public Mono<Void> acquire(Permit permit) {
+        return Mono.defer(() -> {
+            waiters.add(permit);
+            drain();
+            return permit.granted();
+        });
+    }
+
+    public void release(Permit permit) {
+        if (!waiters.cancel(permit)) {
+            inFlight.decrementAndGet();
+            onOutcome(permit);
+        }
+        drain();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getWaiting() {
+        return waiters.size();
+    }
+
+    /**
+     * @return Queue depth and wait time of {@code top} principals with most requests waiting
+     */
+    public List<QueueStats> getQueueStats(int top) {
+        return waiters.getStats(top);
+    }
+
+    public int getRate() {
+        return rateLimiter.getLimitForPeriod();
+    }
+
+    private static Timer waitTimer(String queue, MeterRegistry registry) {
+        return Timer.builder("spotify.requests.wait")
+                .description("Time requests waited for a slot")
+                .tag("queue", queue)
+                .register(registry);
+    }
+
+    private void drain() {
+        while (!waiters.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Permit permit = waiters.poll();
+            if (permit == null || !permit.grant()) {
+                //cancelled permits are skipped here, instead of being searched in the queue on cancel
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private synchronized void onOutcome(Permit permit) {
+        switch (permit.getOutcome()) {
+            case SUCCESS -> {
+                long latency = permit.latency();
+                updateMinLatency(latency);
+                if (latency > minLatency * props.getLatencyTolerance()) {
+                    decrease(permit, props.getLatencyBackoffRatio(), false);
+                } else {
+                    limit = Math.min(props.getMaxConcurrency(), limit + 1 / limit);
+                    setRate(Math.min(maxRate, rate + 1 / rate));
+                }
+            }
+            case THROTTLED -> decrease(permit, props.getBackoffRatio(), true);
+            default -> {
+                // errors other than 429 and cancellations say nothing about API capacity
+            }
+        }
+    }
+
+    /**
+     * Minimal latency is reset to the minimum of last window, so it follows slowly changing network conditions
+     */
+    private void updateMinLatency(long latency) {
+        minLatency = Math.min(minLatency, latency);
+        windowMinLatency = Math.min(windowMinLatency, latency);
+        if (++windowSamples >= props.getLatencyWindow()) {
+            minLatency = windowMinLatency;
+            windowMinLatency = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+    }
+
+    private void decrease(Permit permit, double ratio, boolean decreaseRate) {
+        if (permit.getStart() - lastDecrease < 0) {
+            return;
+        }
+        lastDecrease = System.nanoTime();
+        limit = Math.max(props.getMinConcurrency(), limit * ratio);
+        if (decreaseRate) {
+            setRate(Math.max(1, rate * ratio));
+        }
+        log.debug("Spotify API limits decreased to {} requests in flight, {} requests per {}", (int) limit,
+                getRate(), rateLimiter.getLimitRefreshPeriod());
+    }
+
+    private void setRate(double newRate) {
+        boolean changed = (int) newRate != (int) rate;
+        rate = newRate;
+        if (changed) {
+            rateLimiter.changeLimitForPeriod((int) rate);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queue of {@link AdaptiveLimiter} waiters, fair between principals: deficit round-robin over per-principal queues,
+ * each principal taking up to its weight of requests per round ({@code spotify.fair-queue.weights},
+ * {@code default-weight} for others). So a large import doesn't delay a small one by more than one round.
+ * Interactive requests are served before any bulk ones.
+ * <p>
+ * Cancelled permits are not searched in the queue, they are only uncounted, and dropped when their turn comes,
+ * so they take no share of a round and don't show up in queue depth or wait time.
+ * <p>
+ * Queue operations are short and synchronized, they are negligible compared to requests themselves.
+ */
+
+@Slf4j
+class FairQueue {
+
+    private final SpotifyProps.FairQueue props;
+    private final ArrayDeque<Permit> interactive = new ArrayDeque<>();
+    private final Map<String, Flow> flows = new HashMap<>();
+    private final ArrayDeque<Flow> activeFlows = new ArrayDeque<>();
+    private final Cache<String, WaitStats> waitStats;
+    private final Timer interactiveWait;
+    private final Timer bulkWait;
+    private int size;
+
+    FairQueue(SpotifyProps.FairQueue props, Timer interactiveWait, Timer bulkWait) {
+        this.props = props;
+        this.interactiveWait = interactiveWait;
+        this.bulkWait = bulkWait;
+        this.waitStats = Caffeine.newBuilder()
+                .expireAfterAccess(props.getStatsTtl())
+                .build();
+    }
+
+    synchronized void add(Permit permit) {
+        size++;
+        permit.queued = true;
+        if (permit.isInteractive()) {
+            interactive.add(permit);
+            return;
+        }
+        Flow flow = flows.computeIfAbsent(permit.getPrincipal(), principal -> {
+            Flow newFlow = new Flow(principal, props.getWeights().getOrDefault(principal, props.getDefaultWeight()));
+            activeFlows.add(newFlow);
+            return newFlow;
+        });
+        flow.queue.add(permit);
+    }
+
+    /**
+     * @return Next permit to grant, {@code null} if queue is empty
+     */
+    synchronized Permit poll() {
+        Permit permit;
+        do {
+            permit = interactive.poll();
+            if (permit == null) {
+                permit = pollFlow();
+            }
+            if (permit != null) {
+                permit.queued = false;
+            }
+        } while (permit != null && permit.isCancelled());
+        if (permit != null) {
+            size--;
+            long wait = System.nanoTime() - permit.getEnqueued();
+            waitStats.get(permit.getPrincipal(), principal -> new WaitStats()).add(wait);
+            (permit.isInteractive() ? interactiveWait : bulkWait).record(wait, TimeUnit.NANOSECONDS);
+        }
+        return permit;
+    }
+
+    /**
+     * @return Whether permit was waiting and will never be granted, otherwise it holds a slot to release
+     */
+    synchronized boolean cancel(Permit permit) {
+        if (!permit.cancel()) {
+            return false;
+        }
+        if (permit.queued) {
+            size--;
+        }
+        return true;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return Per principal queue depth and wait time stats, most waiting first
+     */
+    List<QueueStats> getStats(int top) {
+        Map<String, Integer> depths = new HashMap<>();
+        synchronized (this) {
+            flows.forEach((principal, flow) -> flow.queue.forEach(permit -> addDepth(depths, permit)));
+            interactive.forEach(permit -> addDepth(depths, permit));
+        }
+        return waitStats.asMap().entrySet().stream()
+                .map(entry -> entry.getValue().toStats(entry.getKey(), depths.getOrDefault(entry.getKey(), 0)))
+                .sorted(Comparator.comparingInt(QueueStats::queueDepth).reversed()
+                        .thenComparing(QueueStats::maxWait, Comparator.reverseOrder()))
+                .limit(top)
+                .toList();
+    }
+
+    private static void addDepth(Map<String, Integer> depths, Permit permit) {
+        if (!permit.isCancelled()) {
+            depths.merge(permit.getPrincipal(), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Cancelled permit takes no share of the round
+     */
+    private Permit pollFlow() {
+        Flow flow = activeFlows.peekFirst();
+        if (flow == null) {
+            return null;
+        }
+        if (flow.deficit < 1) {
+            flow.deficit += flow.weight;
+        }
+        Permit permit = flow.queue.poll();
+        if (!permit.isCancelled()) {
+            flow.deficit--;
+        }
+        if (flow.queue.isEmpty()) {
+            //idle principal doesn't keep its deficit
+            activeFlows.pollFirst();
+            flows.remove(flow.principal);
+        } else if (flow.deficit < 1) {
+            activeFlows.addLast(activeFlows.pollFirst());
+        }
+        return permit;
+    }
+
+    private static class Flow {
+        private final String principal;
+        private final int weight;
+        private final ArrayDeque<Permit> queue = new ArrayDeque<>();
+        private int deficit;
+
+        Flow(String principal, int weight) {
+            this.principal = principal;
+            this.weight = Math.max(1, weight);
+        }
+    }
+
+    private static class WaitStats {
+        private final LongAdder granted = new LongAdder();
+        private final LongAdder totalWait = new LongAdder();
+        private final AtomicLong maxWait = new AtomicLong();
+
+        void add(long waitNanos) {
+            granted.increment();
+            totalWait.add(waitNanos);
+            maxWait.accumulateAndGet(waitNanos, Math::max);
+        }
+
+        QueueStats toStats(String principal, int queueDepth) {
+            long count = granted.sum();
+            return new QueueStats(principal, queueDepth, count,
+                    Duration.ofNanos(count > 0 ? totalWait.sum() / count : 0),
+                    Duration.ofNanos(maxWait.get()));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * In-process rate limiter of this instance, backed by resilience4j {@link RateLimiter}.
+ */
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "spotify.rate-limiter.type", havingValue = "local", matchIfMissing = true)
+public class LocalRateLimiter implements RequestRateLimiter {
+
+    private final RateLimiter spotifyRateLimiter;
+
+    @Override
+    public Mono<Void> acquirePermission() {
+        return Mono.<Void>empty()
+                .transformDeferred(RateLimiterOperator.of(spotifyRateLimiter));
+    }
+
+    /**
+     * Requests are paused by circuit breaker, only lets waiting requests wait for the pause to end
+     */
+    @Override
+    public void onRetryAfter(Duration retryAfter) {
+        spotifyRateLimiter.changeTimeoutDuration(retryAfter);
+    }
+
+    @Override
+    public int getLimitForPeriod() {
+        return spotifyRateLimiter.getRateLimiterConfig().getLimitForPeriod();
+    }
+
+    @Override
+    public void changeLimitForPeriod(int limitForPeriod) {
+        spotifyRateLimiter.changeLimitForPeriod(limitForPeriod);
+    }
+
+    @Override
+    public Duration getLimitRefreshPeriod() {
+        return spotifyRateLimiter.getRateLimiterConfig().getLimitRefreshPeriod();
+    }
+}
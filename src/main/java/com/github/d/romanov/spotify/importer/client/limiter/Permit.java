@@ -0,0 +1,86 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Slot of {@link AdaptiveLimiter} for a single request, with request outcome to adjust limits.
+ */
+@RequiredArgsConstructor
+public class Permit {
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int CANCELLED = 2;
+
+    public enum Outcome {
+        SUCCESS, THROTTLED, IGNORED
+    }
+
+    /**
+     * Requests are queued fairly between principals, see {@link FairQueue}
+     */
+    @Getter
+    private final String principal;
+    /**
+     * Interactive requests (user waits for a page) go before bulk ones
+     */
+    @Getter
+    private final boolean interactive;
+    @Getter
+    private final long enqueued = System.nanoTime();
+    private final AtomicInteger state = new AtomicInteger(WAITING);
+    private final Sinks.Empty<Void> granted = Sinks.empty();
+    @Getter
+    private volatile long start;
+    @Getter
+    @Setter
+    private volatile Outcome outcome = Outcome.IGNORED;
+    /**
+     * Whether permit is in {@link FairQueue}, guarded by the queue
+     */
+    boolean queued;
+
+    Mono<Void> granted() {
+        return granted.asMono();
+    }
+
+    /**
+     * @return Whether permit was waiting and is granted now
+     */
+    boolean grant() {
+        if (!state.compareAndSet(WAITING, GRANTED)) {
+            return false;
+        }
+        markStarted();
+        granted.tryEmitEmpty();
+        return true;
+    }
+
+    /**
+     * @return Whether permit was waiting and will never be granted, otherwise it holds a slot to release
+     */
+    boolean cancel() {
+        return state.compareAndSet(WAITING, CANCELLED);
+    }
+
+    boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    /**
+     * Request is sent, called again after waiting for rate limiter, so that latency is measured from here
+     */
+    public void markStarted() {
+        start = System.nanoTime();
+    }
+
+    long latency() {
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import java.time.Duration;
+
+/**
+ * Requests of a principal waiting in {@link AdaptiveLimiter} queue.
+ *
+ * @param granted Number of requests granted since stats of the principal were last evicted
+ */
+public record QueueStats(
+        String principal,
+        int queueDepth,
+        long granted,
+        Duration averageWait,
+        Duration maxWait
+) {}
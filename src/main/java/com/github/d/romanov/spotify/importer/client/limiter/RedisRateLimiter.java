@@ -0,0 +1,279 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import io.lettuce.core.codec.StringCodec;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rate limiter shared by all instances through a token bucket in Redis (or any server speaking Redis protocol).
+ * <p>
+ * Bucket is refilled and taken from atomically by a Lua script, using Redis clock, so instance clocks don't matter.
+ * To avoid a round trip per request, each instance takes up to {@code prefetch} permits at once and hands them out
+ * locally; unused permits are dropped after one refresh period, so no instance can hoard them. Only one script call
+ * per instance is in flight, other requests wait for its result.
+ * <p>
+ * Bucket refills at the configured {@code limit-for-period}, which is the limit of the whole cluster. AIMD of
+ * {@link AdaptiveLimiter} only scales this instance's share: its concurrency, and the permits it prefetches
+ * ({@link #getLimitForPeriod()}), so a throttled instance can neither shrink nor inflate the shared refill.
+ * <p>
+ * Retry-After of 429 response seen by any instance is stored as a backoff key with the same TTL, and the script
+ * grants no permits until it expires, so all instances pause together.
+ * <p>
+ * If Redis becomes unavailable, requests fall back to the local rate limiter of this instance. Connection is
+ * established in background, and until it is, the local limiter is used too.
+ */
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spotify.rate-limiter.type", havingValue = "redis")
+public class RedisRateLimiter implements RequestRateLimiter {
+
+    /**
+     * KEYS: bucket, backoff. ARGV: cluster limit for period, period millis, requested permits.
+     * Returns: granted permits, millis to wait if none granted.
+     */
+    private static final String TOKEN_BUCKET_SCRIPT = """
+            if redis.replicate_commands then redis.replicate_commands() end
+            local backoff = redis.call('PTTL', KEYS[2])
+            if backoff > 0 then return {0, backoff} end
+            local rate = tonumber(ARGV[1])
+            local period = tonumber(ARGV[2])
+            local requested = tonumber(ARGV[3])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(bucket[1]) or rate
+            local ts = tonumber(bucket[2]) or now
+            tokens = math.min(rate, tokens + math.max(0, now - ts) * rate / period)
+            local granted = math.min(requested, math.floor(tokens))
+            tokens = tokens - granted
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))
+            redis.call('PEXPIRE', KEYS[1], period * 10)
+            local wait = 0
+            if granted == 0 then wait = math.ceil((1 - tokens) * period / rate) end
+            return {granted, wait}
+            """;
+
+    /**
+     * Failed connection attempt is retried no sooner than after this time, local limiter is used meanwhile
+     */
+    private static final Duration CONNECT_RETRY_INTERVAL = Duration.ofSeconds(5);
+    private static final String SCRIPT_SHA = sha1(TOKEN_BUCKET_SCRIPT);
+
+    private final SpotifyProps.RateLimiter props;
+    private final LocalRateLimiter fallback;
+    private final RedisURI redisUri;
+    private final RedisClient redisClient;
+    private final String[] keys;
+
+    private final AtomicInteger permits = new AtomicInteger();
+    private final AtomicReference<Sinks.One<Long>> fetching = new AtomicReference<>();
+    private final AtomicBoolean connecting = new AtomicBoolean();
+    private volatile StatefulRedisConnection<String, String> connection;
+    private volatile RedisReactiveCommands<String, String> commands;
+    private volatile long nextConnectAt = System.nanoTime();
+    private volatile long permitsExpireAt;
+
+    /**
+     * Connects in background, so that the application starts (with local limiter) while Redis is unavailable
+     */
+    public RedisRateLimiter(SpotifyProps spotifyProps, RateLimiter spotifyRateLimiter) {
+        this.props = spotifyProps.getRateLimiter();
+        this.fallback = new LocalRateLimiter(spotifyRateLimiter);
+        this.redisUri = RedisURI.create(props.getRedis().getUri());
+        this.redisClient = RedisClient.create();
+        //fail fast to fall back to local limiter, instead of queueing commands until Redis is back
+        redisClient.setOptions(ClientOptions.builder()
+                .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                .timeoutOptions(TimeoutOptions.enabled())
+                .socketOptions(SocketOptions.builder()
+                        .connectTimeout(redisUri.getTimeout())
+                        .build())
+                .build());
+        String key = props.getRedis().getKey();
+        this.keys = new String[]{key + ":bucket", key + ":backoff"};
+        connect();
+    }
+
+    @PreDestroy
+    public void close() {
+        StatefulRedisConnection<String, String> current = connection;
+        if (current != null) {
+            current.close();
+        }
+        redisClient.shutdown();
+    }
+
+    /**
+     * @return Whether connection to Redis is established, it is then reconnected automatically if lost
+     */
+    public boolean isConnected() {
+        return commands != null;
+    }
+
+    @Override
+    public Mono<Void> acquirePermission() {
+        return Mono.defer(() -> {
+            if (takeLocalPermit()) {
+                return Mono.empty();
+            }
+            if (!isConnected()) {
+                connect();
+                return fallback.acquirePermission();
+            }
+            return fetchPermits()
+                    .flatMap(wait -> wait > 0
+                            ? Mono.delay(Duration.ofMillis(wait)).then(Mono.defer(this::acquirePermission))
+                            : Mono.defer(this::acquirePermission))
+                    .onErrorResume(RedisException.class, e -> {
+                        log.warn("Shared rate limiter is unavailable, falling back to local one: {}", e.toString());
+                        return fallback.acquirePermission();
+                    });
+        });
+    }
+
+    @Override
+    public void onRetryAfter(Duration retryAfter) {
+        permits.set(0);
+        fallback.onRetryAfter(retryAfter);
+        if (!isConnected()) {
+            return;
+        }
+        commands.set(keys[1], "1", SetArgs.Builder.px(retryAfter.toMillis()))
+                .subscribe(null, e -> log.warn("Failed to share Retry-After backoff: {}", e.toString()));
+    }
+
+    @Override
+    public int getLimitForPeriod() {
+        return fallback.getLimitForPeriod();
+    }
+
+    @Override
+    public void changeLimitForPeriod(int limitForPeriod) {
+        fallback.changeLimitForPeriod(limitForPeriod);
+    }
+
+    @Override
+    public Duration getLimitRefreshPeriod() {
+        return fallback.getLimitRefreshPeriod();
+    }
+
+    private boolean takeLocalPermit() {
+        if (System.nanoTime() - permitsExpireAt > 0) {
+            permits.set(0);
+            return false;
+        }
+        int current;
+        do {
+            current = permits.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!permits.compareAndSet(current, current - 1));
+        return true;
+    }
+
+    /**
+     * @return Millis to wait before the next attempt, 0 if permits were fetched
+     */
+    private Mono<Long> fetchPermits() {
+        return Mono.defer(() -> {
+            Sinks.One<Long> sink = Sinks.one();
+            Sinks.One<Long> current = fetching.compareAndExchange(null, sink);
+            if (current != null) {
+                return current.asMono();
+            }
+            return evalScript()
+                    .doOnSuccess(wait -> {
+                        fetching.set(null);
+                        sink.tryEmitValue(wait);
+                    })
+                    .doOnError(e -> {
+                        fetching.set(null);
+                        sink.tryEmitError(e);
+                    })
+                    .doOnCancel(() -> {
+                        fetching.set(null);
+                        sink.tryEmitValue(0L);
+                    });
+        });
+    }
+
+    private Mono<Long> evalScript() {
+        long period = getLimitRefreshPeriod().toMillis();
+        //AIMD limit of this instance, lower than the cluster one while it is throttled
+        int prefetch = Math.max(1, Math.min(props.getRedis().getPrefetch(), getLimitForPeriod()));
+        String[] args = {String.valueOf(props.getLimitForPeriod()), String.valueOf(period),
+                String.valueOf(prefetch)};
+        return commands.<List<Long>>evalsha(SCRIPT_SHA, ScriptOutputType.MULTI, keys, args)
+                .onErrorResume(RedisNoScriptException.class,
+                        e -> commands.eval(TOKEN_BUCKET_SCRIPT, ScriptOutputType.MULTI, keys, args))
+                .next()
+                .map(result -> {
+                    long granted = result.get(0);
+                    if (granted > 0) {
+                        permitsExpireAt = System.nanoTime() + Duration.ofMillis(period).toNanos();
+                        permits.addAndGet((int) granted);
+                        return 0L;
+                    }
+                    return result.get(1);
+                });
+    }
+
+    /**
+     * Single connection attempt at a time, at most once per {@link #CONNECT_RETRY_INTERVAL}
+     */
+    private void connect() {
+        if (System.nanoTime() - nextConnectAt < 0 || !connecting.compareAndSet(false, true)) {
+            return;
+        }
+        redisClient.connectAsync(StringCodec.UTF8, redisUri)
+                .whenComplete((newConnection, e) -> {
+                    if (e != null) {
+                        nextConnectAt = System.nanoTime() + CONNECT_RETRY_INTERVAL.toNanos();
+                        log.warn("Shared rate limiter is unavailable, using local one: {}", e.toString());
+                    } else {
+                        connection = newConnection;
+                        commands = newConnection.reactive();
+                        log.info("Shared rate limiter is connected to {}", redisUri);
+                    }
+                    connecting.set(false);
+                });
+    }
+
+    private static String sha1(String script) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1")
+                    .digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Limits rate of requests to Spotify API. Implementation is selected by {@code spotify.rate-limiter.type}:
+ * {@link LocalRateLimiter} limits requests of this instance only, {@link RedisRateLimiter} shares the limit
+ * between all instances using the same Spotify client id.
+ */
+public interface RequestRateLimiter {
+
+    /**
+     * @return Completes when request is permitted, fails with {@code RequestNotPermitted} if waiting takes too long
+     */
+    Mono<Void> acquirePermission();
+
+    /**
+     * Called on 429 Too Many Requests, no requests should be permitted until Retry-After passes
+     */
+    void onRetryAfter(Duration retryAfter);
+
+    int getLimitForPeriod();
+
+    void changeLimitForPeriod(int limitForPeriod);
+
+    Duration getLimitRefreshPeriod();
+}
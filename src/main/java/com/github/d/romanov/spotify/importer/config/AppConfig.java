@@ -1,95 +1,189 @@
 package com.github.d.romanov.spotify.importer.config;
 
 import com.github.d.romanov.spotify.importer.client.SpotifyClientFilter;
+import com.github.d.romanov.spotify.importer.client.auth.CachingAuthorizedClientManager;
+import com.github.d.romanov.spotify.importer.config.props.ImportProps;
 import com.github.d.romanov.spotify.importer.config.props.ParserProps;
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import com.github.d.romanov.spotify.importer.config.props.UploadProps;
+import com.github.d.romanov.spotify.importer.metrics.FairQueueEndpoint;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRateLimiterMetrics;
 import io.github.resilience4j.ratelimiter.RateLimiter;
 import io.github.resilience4j.ratelimiter.RateLimiterConfig;
 import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.security.reactive.EndpointRequest;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementServerProperties;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusScrapeEndpoint;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.config.Customizer;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProviderBuilder;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
 import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
-import org.springframework.security.oauth2.client.web.DefaultReactiveOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction;
-import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.DelegatingServerAuthenticationSuccessHandler;
+import org.springframework.security.web.server.authentication.RedirectServerAuthenticationSuccessHandler;
+import org.springframework.security.web.server.authentication.logout.DelegatingServerLogoutHandler;
+import org.springframework.security.web.server.authentication.logout.SecurityContextServerLogoutHandler;
+import org.springframework.security.web.server.authentication.logout.ServerLogoutHandler;
 import org.springframework.security.web.server.csrf.XorServerCsrfTokenRequestAttributeHandler;
+import org.springframework.security.web.server.util.matcher.AndServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
-import java.time.Duration;
+import java.net.InetSocketAddress;
 
 @Configuration
-@EnableConfigurationProperties({ParserProps.class})
+@EnableConfigurationProperties({ParserProps.class, UploadProps.class, SpotifyProps.class, ImportProps.class})
 @EnableWebFluxSecurity
 public class AppConfig {
 
+    /**
+     * Dedicated connection pool, so that connections (and TLS sessions) to Spotify API are reused under load
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider spotifyConnectionProvider(SpotifyProps spotifyProps) {
+        SpotifyProps.Http http = spotifyProps.getHttp();
+        return ConnectionProvider.builder("spotify")
+                .maxConnections(http.getMaxConnections())
+                .pendingAcquireMaxCount(http.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(http.getPendingAcquireTimeout())
+                .maxIdleTime(http.getMaxIdleTime())
+                .maxLifeTime(http.getMaxLifeTime())
+                .evictInBackground(http.getEvictInterval())
+                .metrics(http.isMetrics())
+                .build();
+    }
+
     @Bean
     public WebClient spotifyWebClient(ReactiveOAuth2AuthorizedClientManager authorizedClientManager,
-            SpotifyClientFilter spotifyFilter) {
+            SpotifyClientFilter spotifyFilter, ConnectionProvider spotifyConnectionProvider, SpotifyProps spotifyProps) {
 
         ServerOAuth2AuthorizedClientExchangeFilterFunction oauth2Client =
                 new ServerOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
         oauth2Client.setDefaultClientRegistrationId("spotify");
+        SpotifyProps.Http http = spotifyProps.getHttp();
+        HttpClient httpClient = HttpClient.create(spotifyConnectionProvider)
+                .protocol(http.isHttp2()
+                        ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                        : new HttpProtocol[]{HttpProtocol.HTTP11})
+                .compress(http.isCompress())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.getConnectTimeout().toMillis())
+                .responseTimeout(http.getResponseTimeout());
         return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .baseUrl("https://api.spotify.com")
                 .filter(spotifyFilter)
                 .filter(oauth2Client)
                 .build();
     }
 
+    /**
+     * Tokens are cached per user and refreshed {@code spotify.token.refresh-ahead} of expiry,
+     * see {@link CachingAuthorizedClientManager}. They are loaded from and saved to the authorized client service,
+     * where login saves them too, so background imports don't need the exchange of the upload request.
+     */
     @Bean
-    @ConditionalOnMissingBean
-    public ReactiveOAuth2AuthorizedClientManager authorizedClientManager(
+    @ConditionalOnMissingBean(ReactiveOAuth2AuthorizedClientManager.class)
+    public CachingAuthorizedClientManager authorizedClientManager(
             ReactiveClientRegistrationRepository clientRegistrationRepository,
-            ServerOAuth2AuthorizedClientRepository authorizedClientRepository) {
+            ReactiveOAuth2AuthorizedClientService authorizedClientService, SpotifyProps spotifyProps) {
 
+        SpotifyProps.Token token = spotifyProps.getToken();
         var authorizedClientProvider = ReactiveOAuth2AuthorizedClientProviderBuilder.builder()
                 .authorizationCode()
-                .refreshToken()
+                .refreshToken(refreshToken -> refreshToken.clockSkew(token.getRefreshAhead()))
                 .build();
 
-        var authorizedClientManager = new DefaultReactiveOAuth2AuthorizedClientManager(clientRegistrationRepository,
-                authorizedClientRepository);
+        var authorizedClientManager = new AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager(
+                clientRegistrationRepository, authorizedClientService);
         authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
 
-        return authorizedClientManager;
+        return new CachingAuthorizedClientManager(authorizedClientManager, token);
     }
 
 
     @Bean
-    public SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity serverHttpSecurity) {
+    public SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity serverHttpSecurity,
+            ManagementServerProperties managementServerProperties, ServerProperties serverProperties,
+            ObjectProvider<CachingAuthorizedClientManager> cachingAuthorizedClientManager) {
         var tokenRequestAttributeHandler = new XorServerCsrfTokenRequestAttributeHandler();
         tokenRequestAttributeHandler.setTokenFromMultipartDataEnabled(true);
+        //token cached before a new login or logout must not be used for the user anymore
+        ServerLogoutHandler evictCachedClient = (exchange, authentication) -> Mono.fromRunnable(() ->
+                cachingAuthorizedClientManager.ifAvailable(manager -> manager.evict(authentication)));
         serverHttpSecurity
-                .authorizeExchange(authorize -> authorize.anyExchange().authenticated())
-                .oauth2Login(Customizer.withDefaults())
+                .authorizeExchange(authorize -> authorize
+                        .matchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                        .matchers(internalEndpoints(managementServerProperties, serverProperties)).permitAll()
+                        .anyExchange().authenticated())
+                .oauth2Login(oauth2Login -> oauth2Login
+                        .authenticationSuccessHandler(new DelegatingServerAuthenticationSuccessHandler(
+                                evictCachedClient::logout, new RedirectServerAuthenticationSuccessHandler())))
+                .logout(logout -> logout
+                        .logoutHandler(new DelegatingServerLogoutHandler(new SecurityContextServerLogoutHandler(),
+                                evictCachedClient)))
                 .csrf(csrf -> csrf.csrfTokenRequestHandler(tokenRequestAttributeHandler));
         return serverHttpSecurity.build();
     }
 
+    /**
+     * Matches internal actuator endpoints on {@code management.server.port}, which must not be exposed publicly.
+     * Matches nothing if management endpoints are served on the application port.
+     */
+    private static ServerWebExchangeMatcher internalEndpoints(ManagementServerProperties managementServerProperties,
+            ServerProperties serverProperties) {
+        Integer port = managementServerProperties.getPort();
+        if (port == null || port <= 0 || port.equals(serverProperties.getPort())) {
+            return exchange -> ServerWebExchangeMatcher.MatchResult.notMatch();
+        }
+        ServerWebExchangeMatcher managementPort = exchange -> {
+            InetSocketAddress address = exchange.getRequest().getLocalAddress();
+            return address != null && address.getPort() == port
+                    ? ServerWebExchangeMatcher.MatchResult.match()
+                    : ServerWebExchangeMatcher.MatchResult.notMatch();
+        };
+        return new AndServerWebExchangeMatcher(EndpointRequest.to(PrometheusScrapeEndpoint.class, FairQueueEndpoint.class),
+                managementPort);
+    }
+
     @Bean
-    public RateLimiter spotifyRateLimiter() {
+    public RateLimiter spotifyRateLimiter(SpotifyProps spotifyProps, MeterRegistry meterRegistry) {
+        SpotifyProps.RateLimiter props = spotifyProps.getRateLimiter();
         RateLimiterConfig config = RateLimiterConfig.custom()
-                .limitRefreshPeriod(Duration.ofMillis(100))
-                .limitForPeriod(100)
-                .timeoutDuration(Duration.ofSeconds(5))
+                .limitRefreshPeriod(props.getLimitRefreshPeriod())
+                .limitForPeriod(props.getLimitForPeriod())
+                .timeoutDuration(props.getTimeout())
                 .build();
 
         RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(config);
+        TaggedRateLimiterMetrics.ofRateLimiterRegistry(rateLimiterRegistry).bindTo(meterRegistry);
         return rateLimiterRegistry.rateLimiter("spotifyRateLimiter");
     }
 
     @Bean
-    public CircuitBreaker circuitBreaker() {
+    public CircuitBreaker circuitBreaker(MeterRegistry meterRegistry) {
         CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
         return circuitBreakerRegistry.circuitBreaker("spotifyCircuitBreaker");
     }
 
@@ -0,0 +1,65 @@
+package com.github.d.romanov.spotify.importer.config.props;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "import")
+public class ImportProps {
+
+    private NotFound notFound;
+    private Jobs jobs;
+    private Journal journal;
+
+    /**
+     * Tracks not found in Spotify during a single import
+     */
+    @Data
+    public static class NotFound {
+        /**
+         * Number of not found tracks kept in memory, the rest is spilled to a temp file
+         */
+        private int sampleSize;
+        /**
+         * Directory for spilled not found tracks
+         */
+        private String spillDirectory;
+    }
+
+    /**
+     * Imports run as background jobs, see {@code ImportJobService}
+     */
+    @Data
+    public static class Jobs {
+        /**
+         * Number of imports running at once on this node
+         */
+        private int maxRunning;
+        /**
+         * Number of imports waiting to run, further uploads are rejected
+         */
+        private int maxQueued;
+        /**
+         * How long a finished job and its result are kept
+         */
+        private Duration resultTtl;
+        /**
+         * Interval of progress events
+         */
+        private Duration progressInterval;
+    }
+
+    /**
+     * Journals of imports, to resume them after a failure, see {@code ImportJournal}
+     */
+    @Data
+    public static class Journal {
+        private String directory;
+        /**
+         * Journals of imports that were not resumed are deleted after this time
+         */
+        private Duration ttl;
+    }
+}
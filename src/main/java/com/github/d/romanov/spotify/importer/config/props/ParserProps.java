@@ -2,15 +2,58 @@ package com.github.d.romanov.spotify.importer.config.props;
 
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 @Data
 @ConfigurationProperties(prefix = "parser")
 public class ParserProps {
 
     private Txt txt;
+    private Csv csv;
+    private M3u m3u;
+    private Itunes itunes;
 
     @Data
     public static class Txt {
+        /**
+         * Literal separator between track and artist names
+         */
         private String delimiter;
     }
+
+    @Data
+    public static class Csv {
+        /**
+         * Literal field separator
+         */
+        private String delimiter;
+        /**
+         * Quote character, fields are never quoted if not set
+         */
+        private Character quote;
+    }
+
+    @Data
+    public static class M3u {
+        /**
+         * Literal separator between artist and track names in {@code #EXTINF} title or file name
+         */
+        private String delimiter;
+    }
+
+    @Data
+    public static class Itunes {
+        /**
+         * Uploads of this size and larger are parsed in parallel by {@code ITunesXmlParallelFileParser}
+         */
+        private DataSize parallelThreshold;
+        /**
+         * Number of library chunks parsed concurrently
+         */
+        private int parallelism;
+        /**
+         * Approximate size of library chunk parsed by a single thread
+         */
+        private DataSize chunkSize;
+    }
 }
@@ -0,0 +1,218 @@
+package com.github.d.romanov.spotify.importer.config.props;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "spotify")
+public class SpotifyProps {
+
+    private Http http;
+    private SearchCache searchCache;
+    private PlaylistCache playlistCache;
+    private Limiter limiter;
+    private RateLimiter rateLimiter;
+    private FairQueue fairQueue;
+    private Writer writer;
+    private Token token;
+
+    /**
+     * Connection layer of Spotify API client
+     */
+    @Data
+    public static class Http {
+        private int maxConnections;
+        /**
+         * Maximal number of requests waiting for a connection, -1 for unbounded
+         */
+        private int pendingAcquireMaxCount;
+        private Duration pendingAcquireTimeout;
+        /**
+         * Idle connections are closed after this time, and checked in background every {@code evict-interval}
+         */
+        private Duration maxIdleTime;
+        private Duration maxLifeTime;
+        private Duration evictInterval;
+        /**
+         * Negotiate HTTP/2 (multiplexing requests over fewer connections), falls back to HTTP/1.1
+         */
+        private boolean http2;
+        /**
+         * Request gzip responses
+         */
+        private boolean compress;
+        private Duration connectTimeout;
+        private Duration responseTimeout;
+        /**
+         * Publish connection pool metrics (active, idle, pending connections, acquire time)
+         */
+        private boolean metrics;
+    }
+
+    @Data
+    public static class SearchCache {
+        /**
+         * Maximum number of searches cached in memory
+         */
+        private long maxSize;
+        /**
+         * How long found track id is cached
+         */
+        private Duration ttl;
+        /**
+         * How long "not found" result is cached
+         */
+        private Duration notFoundTtl;
+        private Disk disk;
+
+        /**
+         * Append-only cache log, loaded into memory on startup so cache survives restarts
+         */
+        @Data
+        public static class Disk {
+            private boolean enabled;
+            private String path;
+            /**
+             * Log is compacted to live memory entries when it grows past this size
+             */
+            private DataSize maxSize;
+            /**
+             * How often new entries are written to the log
+             */
+            private Duration flushInterval;
+        }
+    }
+
+    /**
+     * See {@code PlaylistCache}
+     */
+    @Data
+    public static class PlaylistCache {
+        private long maxSize;
+        /**
+         * Playlists are served from cache without requests for this time
+         */
+        private Duration ttl;
+        /**
+         * Stale playlists are kept for this time, to be revalidated with conditional requests
+         */
+        private Duration etagTtl;
+    }
+
+    /**
+     * See {@code AdaptiveLimiter}
+     */
+    @Data
+    public static class Limiter {
+        private int initialConcurrency;
+        private int minConcurrency;
+        private int maxConcurrency;
+        /**
+         * Limits multiplier on 429 Too Many Requests
+         */
+        private double backoffRatio;
+        /**
+         * Concurrency multiplier on slow response
+         */
+        private double latencyBackoffRatio;
+        /**
+         * Response is slow if it takes longer than minimal latency times tolerance
+         */
+        private double latencyTolerance;
+        /**
+         * Number of responses after which minimal latency is reset
+         */
+        private int latencyWindow;
+    }
+
+    @Data
+    public static class RateLimiter {
+        /**
+         * "local" to limit requests of this instance, "redis" to share the limit between instances
+         */
+        private String type;
+        /**
+         * Maximal number of requests per refresh period, adjusted by {@code AdaptiveLimiter}
+         */
+        private int limitForPeriod;
+        private Duration limitRefreshPeriod;
+        /**
+         * How long request may wait for permission
+         */
+        private Duration timeout;
+        private Redis redis;
+
+        @Data
+        public static class Redis {
+            private String uri;
+            /**
+             * Prefix of shared keys, same for all instances using the same Spotify client id
+             */
+            private String key;
+            /**
+             * Number of permits taken from shared bucket at once
+             */
+            private int prefetch;
+        }
+    }
+
+    /**
+     * See {@code FairQueue}
+     */
+    @Data
+    public static class FairQueue {
+        private int defaultWeight;
+        /**
+         * Weights by principal name (Spotify user id)
+         */
+        private Map<String, Integer> weights = new HashMap<>();
+        /**
+         * How long wait time stats of a principal are kept after its last request
+         */
+        private Duration statsTtl;
+        /**
+         * Number of principals reported by {@code /actuator/fairqueue} by default
+         */
+        private int statsTop;
+    }
+
+    /**
+     * Writes of found tracks, made while later tracks are still searched
+     */
+    @Data
+    public static class Writer {
+        /**
+         * Incomplete batch is written after this time, so that a slow search doesn't hold found tracks back
+         */
+        private Duration flushInterval;
+    }
+
+    /**
+     * Cache of access tokens of each user, so that long imports don't race each other to refresh an expired token
+     */
+    @Data
+    public static class Token {
+        /**
+         * Token is refreshed in background when it expires within this time, while requests still use it
+         */
+        private Duration refreshAhead;
+        /**
+         * Requests wait for the refresh when token expires within this time
+         */
+        private Duration minValidity;
+        /**
+         * Failed background refresh is retried no sooner than after this time
+         */
+        private Duration retryInterval;
+        private long maxSize;
+        /**
+         * Tokens of users without requests for this time are evicted
+         */
+        private Duration idleTtl;
+    }
+}
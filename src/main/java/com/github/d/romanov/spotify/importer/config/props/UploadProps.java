@@ -0,0 +1,19 @@
+package com.github.d.romanov.spotify.importer.config.props;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@Data
+@ConfigurationProperties(prefix = "upload")
+public class UploadProps {
+
+    /**
+     * Directory for spooled uploads
+     */
+    private String spoolDirectory;
+    /**
+     * Size of a single buffer mapped from spooled upload
+     */
+    private DataSize readChunkSize;
+}
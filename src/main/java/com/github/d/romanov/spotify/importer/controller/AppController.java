@@ -2,21 +2,34 @@ package com.github.d.romanov.spotify.importer.controller;
 
 import com.github.d.romanov.spotify.importer.model.ImportResult;
 import com.github.d.romanov.spotify.importer.model.dto.UploadRequest;
-import com.github.d.romanov.spotify.importer.service.ImporterService;
+import com.github.d.romanov.spotify.importer.service.NotFoundTracks;
 import com.github.d.romanov.spotify.importer.service.UserService;
+import com.github.d.romanov.spotify.importer.service.job.ImportJob;
+import com.github.d.romanov.spotify.importer.service.job.ImportJobService;
+import com.github.d.romanov.spotify.importer.service.job.ImportJobStatus;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.reactive.result.view.Rendering;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -28,8 +41,11 @@ public class AppController {
     public static final String INDEX = "index";
     public static final String INDEX_PATH = "/";
     public static final String UPLOAD_PATH = "/upload";
+    public static final String JOBS_PATH = "/jobs";
 
-    private final ImporterService importerService;
+    private static final MediaType TEXT_TSV = new MediaType("text", "tab-separated-values", StandardCharsets.UTF_8);
+
+    private final ImportJobService importJobService;
     private final UserService userService;
 
     @GetMapping(INDEX_PATH)
@@ -56,24 +72,89 @@ public class AppController {
 
     @PostMapping(value = UPLOAD_PATH, consumes = {MediaType.MULTIPART_FORM_DATA_VALUE})
     public Mono<Rendering> uploadFile(ServerWebExchange exchange) {
-        return exchange.getMultipartData().map(UploadRequest::fromMultiValueMap)
-                .flatMap(importerService::importTracks)
-                .filter(ImportResult::isImportSuccessful)
-                .map(importResult -> {
-                    ModelMap modelMap = new ModelMap();
-                    if (!importResult.notFoundTracks().isEmpty()) {
-                        modelMap.put("notFoundTracks", importResult.notFoundTracks());
-                    }
-                    return modelMap;
-                })
-                .doOnNext(modelMap -> modelMap.put("message", "Import completed successfully"))
-                .defaultIfEmpty(new ModelMap("error", "Import failed, check logs"))
-                .map(modelMap -> Rendering.view(INDEX)
-                        .model(modelMap)
-                        .build())
+        return exchange.getMultipartData()
+                .map(multipartData -> UploadRequest.fromMultiValueMap(multipartData,
+                        exchange.getRequest().getHeaders().getContentLength()))
+                .flatMap(importJobService::submit)
+                .map(job -> Rendering.redirectTo(JOBS_PATH + "/" + job.getId()).build())
                 .onErrorResume(throwable -> Mono.just(Rendering.view(INDEX)
                         .modelAttribute("error", throwable.toString())
                         .build()));
     }
 
+    /**
+     * Renders progress of the job, which is updated from {@link #jobEvents(String)}, or its result once it is finished
+     */
+    @GetMapping(JOBS_PATH + "/{id}")
+    public Mono<Rendering> job(@AuthenticationPrincipal OAuth2User principal, @PathVariable String id) {
+        return importJobService.getJob(id)
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Import job not found")))
+                .zipWith(homepage(principal), (job, homepage) -> Rendering.view(INDEX)
+                        .model(homepage.modelAttributes())
+                        .model(jobModel(job))
+                        .build());
+    }
+
+    @ResponseBody
+    @GetMapping(value = JOBS_PATH + "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<ImportJobStatus>> jobEvents(@PathVariable String id) {
+        return importJobService.getProgress(id)
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Import job not found")))
+                .map(status -> ServerSentEvent.builder(status)
+                        .event("progress")
+                        .build());
+    }
+
+    /**
+     * Full list of tracks not found by a finished job, one {@code trackName \t artistName} line each,
+     * while the page only renders a sample
+     */
+    @GetMapping(JOBS_PATH + "/{id}/not-found")
+    public Mono<ResponseEntity<Flux<String>>> notFoundTracks(@PathVariable String id) {
+        return importJobService.getJob(id)
+                .mapNotNull(ImportJob::getResult)
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Import result not found")))
+                .map(result -> ResponseEntity.ok()
+                        .contentType(TEXT_TSV)
+                        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                                .filename("not-found-" + id + ".tsv")
+                                .build()
+                                .toString())
+                        .body(result.notFoundTracks().readAll()
+                                .map(track -> NotFoundTracks.format(track) + "\n")));
+    }
+
+    private ModelMap jobModel(ImportJob job) {
+        ModelMap modelMap = new ModelMap("jobId", job.getId());
+        if (!job.isFinished()) {
+            modelMap.put("job", job.getStatus());
+            return modelMap;
+        }
+        ImportResult importResult = job.getResult();
+        if (importResult == null) {
+            modelMap.put("error", job.getError());
+            return modelMap;
+        }
+        if (!importResult.isImportSuccessful()) {
+            modelMap.put("error", "Import failed, check logs");
+            return modelMap;
+        }
+        modelMap.put("message", "Import completed successfully, " + importResult.importedTracks() + " tracks added");
+        NotFoundTracks notFoundTracks = importResult.notFoundTracks();
+        if (notFoundTracks.count() > 0) {
+            modelMap.put("notFoundTracks", notFoundTracks.sample());
+            modelMap.put("notFoundCount", notFoundTracks.count());
+        }
+        if (notFoundTracks.isTruncated()) {
+            modelMap.put("notFoundMore", notFoundTracks.count() - notFoundTracks.sample().size());
+        }
+        if (importResult.duplicatesSkipped() > 0) {
+            modelMap.put("duplicatesSkipped", importResult.duplicatesSkipped());
+        }
+        if (importResult.existingSkipped() > 0) {
+            modelMap.put("existingSkipped", importResult.existingSkipped());
+        }
+        return modelMap;
+    }
+
 }
@@ -0,0 +1,35 @@
+package com.github.d.romanov.spotify.importer.metrics;
+
+import com.github.d.romanov.spotify.importer.client.limiter.AdaptiveLimiter;
+import com.github.d.romanov.spotify.importer.client.limiter.QueueStats;
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/fairqueue}: requests waiting in {@link AdaptiveLimiter} per user, most waiting first.
+ * Users are not metric tags, see {@link ImportMetrics}, so they are only reported here.
+ * Served on the internal management port only.
+ */
+
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "fairqueue")
+public class FairQueueEndpoint {
+
+    private final AdaptiveLimiter adaptiveLimiter;
+    private final SpotifyProps spotifyProps;
+
+    /**
+     * @param top Number of users to report, {@code spotify.fair-queue.stats-top} by default
+     */
+    @ReadOperation
+    public List<QueueStats> queueStats(@Nullable Integer top) {
+        return adaptiveLimiter.getQueueStats(top != null ? top : spotifyProps.getFairQueue().getStatsTop());
+    }
+}
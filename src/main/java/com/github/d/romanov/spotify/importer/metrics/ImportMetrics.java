@@ -0,0 +1,165 @@
+package com.github.d.romanov.spotify.importer.metrics;
+
+import com.github.d.romanov.spotify.importer.client.cache.InFlightSearches;
+import com.github.d.romanov.spotify.importer.client.limiter.AdaptiveLimiter;
+import com.github.d.romanov.spotify.importer.client.limiter.RequestRateLimiter;
+import com.github.d.romanov.spotify.importer.model.ImportType;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the import pipeline, exposed via {@code /actuator/prometheus}.
+ * <p>
+ * Every tag has a few fixed values (parser, import target, result), never a user, playlist or track,
+ * so the number of time series doesn't grow with usage. Requests waiting in {@link AdaptiveLimiter} are only
+ * counted in total, not per user. Rate limiter permits and circuit breaker state are published by resilience4j.
+ */
+
+@Component
+public class ImportMetrics {
+
+    private static final String PARSER = "parser";
+    private static final String TARGET = "target";
+    private static final String RESULT = "result";
+    private static final String OUTCOME = "outcome";
+
+    private final MeterRegistry registry;
+    private final Timer searchFound;
+    private final Timer searchNotFound;
+    private final Timer searchFailed;
+    private final Counter found;
+    private final Counter notFound;
+    private final Counter throttled;
+    private final DistributionSummary retryAfter;
+
+    public ImportMetrics(MeterRegistry registry, AdaptiveLimiter adaptiveLimiter,
+                         RequestRateLimiter requestRateLimiter, CircuitBreaker spotifyCircuitBreaker,
+                         InFlightSearches inFlightSearches) {
+        this.registry = registry;
+        this.searchFound = searchTimer("found");
+        this.searchNotFound = searchTimer("not_found");
+        this.searchFailed = searchTimer("error");
+        this.found = resolvedCounter("found");
+        this.notFound = resolvedCounter("not_found");
+        this.throttled = Counter.builder("spotify.throttled")
+                .description("429 Too Many Requests responses")
+                .register(registry);
+        this.retryAfter = DistributionSummary.builder("spotify.retry.after")
+                .description("Retry-After of 429 Too Many Requests responses")
+                .baseUnit("seconds")
+                .register(registry);
+
+        Gauge.builder("spotify.requests.in.flight", adaptiveLimiter, AdaptiveLimiter::getInFlight)
+                .description("Requests sent to Spotify API and not answered yet")
+                .register(registry);
+        Gauge.builder("spotify.requests.limit", adaptiveLimiter, AdaptiveLimiter::getLimit)
+                .description("Current limit of requests in flight")
+                .register(registry);
+        Gauge.builder("spotify.requests.waiting", adaptiveLimiter, AdaptiveLimiter::getWaiting)
+                .description("Requests of all users waiting for a slot")
+                .register(registry);
+        Gauge.builder("spotify.rate.limit", requestRateLimiter, RequestRateLimiter::getLimitForPeriod)
+                .description("Current number of requests permitted per refresh period")
+                .register(registry);
+        Gauge.builder("spotify.searches.in.flight", inFlightSearches, InFlightSearches::getInFlightCount)
+                .description("Distinct searches in flight")
+                .register(registry);
+        FunctionCounter.builder("spotify.searches.coalesced", inFlightSearches, InFlightSearches::getCoalescedCount)
+                .description("Searches that joined the same search in flight instead of sending a request")
+                .register(registry);
+        spotifyCircuitBreaker.getEventPublisher()
+                .onStateTransition(event -> registry.counter("spotify.circuit.breaker.transitions",
+                                "from", tag(event.getStateTransition().getFromState()),
+                                "to", tag(event.getStateTransition().getToState()))
+                        .increment());
+    }
+
+    /**
+     * Times parsing of a file, from subscription to the last track, and counts parsed tracks
+     */
+    public <T> Flux<T> timeParse(String parser, Flux<T> tracks) {
+        Counter parsed = Counter.builder("import.parse.tracks")
+                .description("Tracks parsed from uploaded files")
+                .tag(PARSER, parser)
+                .register(registry);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return tracks.doOnNext(track -> parsed.increment())
+                    .doFinally(signal -> registry.timer("import.parse", PARSER, parser, OUTCOME, outcome(signal))
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * Times search request, cached searches are not timed
+     */
+    public Mono<TrackId> timeSearch(Mono<TrackId> search) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return search
+                    .doOnSuccess(id -> (id != null ? searchFound : searchNotFound)
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(throwable -> searchFailed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * Times writing a batch of found tracks
+     */
+    public <T> Mono<T> timeWrite(ImportType target, Mono<T> write) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return write.doFinally(signal -> registry.timer("import.write", TARGET, tag(target), OUTCOME, outcome(signal))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    public void onResolved(boolean isFound) {
+        (isFound ? found : notFound).increment();
+    }
+
+    public void onThrottled(Duration retryAfter) {
+        throttled.increment();
+        this.retryAfter.record(retryAfter.toSeconds());
+    }
+
+    private Timer searchTimer(String result) {
+        return Timer.builder("spotify.search")
+                .description("Latency of track search requests, including waits for rate limits")
+                .tag(RESULT, result)
+                .register(registry);
+    }
+
+    private Counter resolvedCounter(String result) {
+        return Counter.builder("import.tracks.resolved")
+                .description("Imported tracks by whether they were found in Spotify")
+                .tag(RESULT, result)
+                .register(registry);
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            default -> "cancelled";
+        };
+    }
+
+    private static String tag(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
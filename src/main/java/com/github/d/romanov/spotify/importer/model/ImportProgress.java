@@ -0,0 +1,74 @@
+package com.github.d.romanov.spotify.importer.model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of a single import, updated concurrently by the import pipeline.
+ * <p>
+ * It is also put into Reactor context of the import, so that Spotify client can count 429 Too Many Requests waits.
+ */
+public class ImportProgress {
+
+    private final LongAdder parsed = new LongAdder();
+    private final LongAdder searched = new LongAdder();
+    private final LongAdder found = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder existing = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    public void onParsed() {
+        parsed.increment();
+    }
+
+    public void onResolved(boolean isFound) {
+        searched.increment();
+        if (isFound) {
+            found.increment();
+        }
+    }
+
+    public void onWritten(long tracks) {
+        written.add(tracks);
+    }
+
+    public void onExisting(long tracks) {
+        existing.add(tracks);
+    }
+
+    public void onThrottled() {
+        throttled.increment();
+    }
+
+    public long getParsed() {
+        return parsed.sum();
+    }
+
+    /**
+     * @return Number of tracks searched or validated by id, found or not
+     */
+    public long getSearched() {
+        return searched.sum();
+    }
+
+    public long getFound() {
+        return found.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * @return Number of found tracks not written, because they are already in the target playlist or Liked Songs
+     */
+    public long getExisting() {
+        return existing.sum();
+    }
+
+    /**
+     * @return Number of 429 Too Many Requests responses waited for
+     */
+    public long getThrottled() {
+        return throttled.sum();
+    }
+}
@@ -1,8 +1,18 @@
 package com.github.d.romanov.spotify.importer.model;
 
-import java.util.List;
+import com.github.d.romanov.spotify.importer.service.NotFoundTracks;
 
+/**
+ * @param importedTracks    Number of found tracks written to Spotify
+ * @param duplicatesSkipped Number of tracks that were not searched or not written, because the same track
+ *                          (same search query or same found id) was already imported from the file
+ * @param existingSkipped   Number of found tracks that were already in the target playlist or Liked Songs
+ * @param notFoundTracks    Count and sample of tracks not found in Spotify, with the full list spilled to disk
+ */
 public record ImportResult(
         boolean isImportSuccessful,
-        List<Track> notFoundTracks
+        long importedTracks,
+        long duplicatesSkipped,
+        long existingSkipped,
+        NotFoundTracks notFoundTracks
 ) {}
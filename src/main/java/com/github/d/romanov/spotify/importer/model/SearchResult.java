@@ -3,6 +3,6 @@ package com.github.d.romanov.spotify.importer.model;
 import java.util.List;
 
 public record SearchResult(
-        List<String> trackIds,
+        List<TrackId> trackIds,
         List<Track> notFoundTracks
 ) {}
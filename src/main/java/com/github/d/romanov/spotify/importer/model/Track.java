@@ -1,22 +1,31 @@
 package com.github.d.romanov.spotify.importer.model;
 
-import lombok.AllArgsConstructor;
 import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.With;
 
+/**
+ * Immutable track, artist names are shared between tracks of the same import (see {@code ParserService}).
+ *
+ * @param id Spotify id, {@code null} if not searched or not found. Tracks listed by URI or link have id
+ *           since parsing, and the link as a track name
+ */
 @Builder
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
-public class Track {
+@With
+public record Track(
+        String trackName,
+        String artistName,
+        TrackId id
+) {
 
-    private String id;
-    private String trackName;
-    private String artistName;
+    /**
+     * @return Track listed by URI or link, search is not needed
+     */
+    public static Track ofLink(String link, TrackId id) {
+        return new Track(link, "", id);
+    }
 
     @Override
     public String toString() {
-        return artistName + " - " + trackName;
+        return artistName == null || artistName.isEmpty() ? trackName : artistName + " - " + trackName;
     }
 }
@@ -0,0 +1,112 @@
+package com.github.d.romanov.spotify.importer.model;
+
+import java.util.Arrays;
+
+/**
+ * Spotify track id, 22 base62 characters packed 6 bits per character: first 10 characters into {@code high},
+ * next 10 into {@code low}, last 2 into {@code tail}. Takes 32 bytes instead of 64 for equivalent {@link String}.
+ */
+public record TrackId(
+        long high,
+        long low,
+        int tail
+) {
+
+    public static final int LENGTH = 22;
+    public static final String URI_PREFIX = "spotify:track:";
+    private static final String LINK_HOST = "open.spotify.com/";
+    private static final String LINK_PATH = "track/";
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int BITS = 6;
+    private static final int CHARS_PER_LONG = 10;
+    private static final byte[] INDEXES = new byte[128];
+
+    static {
+        Arrays.fill(INDEXES, (byte) -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            INDEXES[ALPHABET.charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if id is not 22 base62 characters
+     */
+    public static TrackId of(CharSequence id) {
+        if (!isValid(id)) {
+            throw new IllegalArgumentException("Invalid Spotify track id: " + id);
+        }
+        return new TrackId(pack(id, 0, CHARS_PER_LONG), pack(id, CHARS_PER_LONG, 2 * CHARS_PER_LONG),
+                (int) pack(id, 2 * CHARS_PER_LONG, LENGTH));
+    }
+
+    /**
+     * Parses track URI or link as copied from Spotify apps: {@code spotify:track:id},
+     * {@code https://open.spotify.com/track/id?si=...}, {@code https://open.spotify.com/intl-de/track/id}.
+     *
+     * @return Track id, {@code null} if text is not a track URI or link
+     */
+    public static TrackId fromUriOrLink(String text) {
+        if (text == null) {
+            return null;
+        }
+        int start;
+        if (text.startsWith(URI_PREFIX)) {
+            start = URI_PREFIX.length();
+        } else {
+            int host = text.indexOf(LINK_HOST);
+            int path = host < 0 ? -1 : text.indexOf(LINK_PATH, host + LINK_HOST.length());
+            if (path < 0) {
+                return null;
+            }
+            start = path + LINK_PATH.length();
+        }
+        int end = start + LENGTH;
+        if (end > text.length() || end < text.length() && "?/#".indexOf(text.charAt(end)) < 0) {
+            return null;
+        }
+        CharSequence id = text.subSequence(start, end);
+        return isValid(id) ? of(id) : null;
+    }
+
+    public static boolean isValid(CharSequence id) {
+        if (id == null || id.length() != LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            char c = id.charAt(i);
+            if (c >= INDEXES.length || INDEXES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String toUri() {
+        return URI_PREFIX + this;
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[LENGTH];
+        unpack(high, chars, 0, CHARS_PER_LONG);
+        unpack(low, chars, CHARS_PER_LONG, 2 * CHARS_PER_LONG);
+        unpack(tail, chars, 2 * CHARS_PER_LONG, LENGTH);
+        return new String(chars);
+    }
+
+    private static long pack(CharSequence id, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value << BITS | INDEXES[id.charAt(i)];
+        }
+        return value;
+    }
+
+    private static void unpack(long value, char[] chars, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            chars[i] = ALPHABET.charAt((int) (value & (1 << BITS) - 1));
+            value >>>= BITS;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.d.romanov.spotify.importer.model;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+
+/**
+ * @param filename    Name of uploaded file
+ * @param contentType Content type sent by browser, may be {@code null}
+ * @param size      File size if spooled, otherwise size hint, -1 if unknown
+ * @param spoolFile Temp file holding the whole content, {@code null} if content is streamed from the part
+ * @param content   File content, read from memory mapped spool file if spooled
+ */
+public record UploadedFile(
+        String filename,
+        MediaType contentType,
+        long size,
+        Path spoolFile,
+        Flux<DataBuffer> content
+) {
+
+    public boolean isSpooled() {
+        return spoolFile != null;
+    }
+}
@@ -2,6 +2,10 @@ package com.github.d.romanov.spotify.importer.model.dto;
 
 import java.util.List;
 
+/**
+ * @param position Zero-based index in playlist to insert tracks at
+ */
 public record AddTracksToPlaylistRequest(
-        List<String> uris
+        List<String> uris,
+        int position
 ) {}
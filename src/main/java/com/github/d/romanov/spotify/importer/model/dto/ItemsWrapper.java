@@ -1,7 +0,0 @@
-package com.github.d.romanov.spotify.importer.model.dto;
-
-import java.util.List;
-
-public record ItemsWrapper(
-        List<Item> items
-) {}
@@ -0,0 +1,21 @@
+package com.github.d.romanov.spotify.importer.model.dto;
+
+import java.util.List;
+
+/**
+ * Page of playlist items
+ *
+ * @param total Number of items in the whole playlist
+ */
+public record PlaylistTracksResponse(
+        int total,
+        List<PlaylistItem> items
+) {
+
+    /**
+     * @param track Track or episode, {@code null} if it is no longer available
+     */
+    public record PlaylistItem(
+            Item track
+    ) {}
+}
@@ -2,6 +2,12 @@ package com.github.d.romanov.spotify.importer.model.dto;
 
 import java.util.List;
 
+/**
+ * Page of user playlists
+ *
+ * @param total Number of playlists of the user
+ */
 public record PlaylistsResponse(
+        int total,
         List<Playlist> items
 ) {}
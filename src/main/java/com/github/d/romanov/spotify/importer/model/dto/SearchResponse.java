@@ -1,5 +0,0 @@
-package com.github.d.romanov.spotify.importer.model.dto;
-
-public record SearchResponse(
-        ItemsWrapper tracks
-) {}
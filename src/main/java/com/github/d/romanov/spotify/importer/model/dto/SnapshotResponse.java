@@ -0,0 +1,7 @@
+package com.github.d.romanov.spotify.importer.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public record SnapshotResponse(
+        @JsonProperty("snapshot_id") String snapshotId
+) {}
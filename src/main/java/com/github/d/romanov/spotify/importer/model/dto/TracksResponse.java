@@ -0,0 +1,10 @@
+package com.github.d.romanov.spotify.importer.model.dto;
+
+import java.util.List;
+
+/**
+ * @param tracks Tracks in order of requested ids, {@code null} for ids that don't exist
+ */
+public record TracksResponse(
+        List<Item> tracks
+) {}
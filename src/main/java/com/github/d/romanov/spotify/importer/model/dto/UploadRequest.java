@@ -8,13 +8,26 @@ import org.springframework.util.MultiValueMap;
 
 import java.util.Optional;
 
+/**
+ * @param skipExisting  Whether tracks already in the target playlist or Liked Songs are not written again
+ * @param contentLength Length of the whole multipart request, i.e. upper bound of the file size, -1 if unknown
+ */
 public record UploadRequest(
         FilePart file,
         ImportType importType,
         String playlistId,
-        String newPlaylistName
+        String newPlaylistName,
+        boolean skipExisting,
+        long contentLength
 ) {
-    public static UploadRequest fromMultiValueMap(MultiValueMap<String, Part> map) {
+    /**
+     * @return Request without the file part, to be kept once the file is spooled
+     */
+    public UploadRequest withoutFile() {
+        return new UploadRequest(null, importType, playlistId, newPlaylistName, skipExisting, contentLength);
+    }
+
+    public static UploadRequest fromMultiValueMap(MultiValueMap<String, Part> map, long contentLength) {
         return new UploadRequest(
                 (FilePart) map.getFirst("file"),
                 Optional.ofNullable(map.getFirst("importType"))
@@ -29,7 +42,9 @@ public record UploadRequest(
                 Optional.ofNullable(map.getFirst("newPlaylistName"))
                         .map(FormFieldPart.class::cast)
                         .map(FormFieldPart::value)
-                        .orElse(null)
+                        .orElse(null),
+                map.containsKey("skipExisting"),
+                contentLength
         );
     }
 }
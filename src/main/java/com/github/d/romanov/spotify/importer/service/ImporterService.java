@@ -1,14 +1,25 @@
 package com.github.d.romanov.spotify.importer.service;
 
 import com.github.d.romanov.spotify.importer.client.SpotifyClient;
+import com.github.d.romanov.spotify.importer.config.props.ImportProps;
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import com.github.d.romanov.spotify.importer.metrics.ImportMetrics;
+import com.github.d.romanov.spotify.importer.model.ImportProgress;
 import com.github.d.romanov.spotify.importer.model.ImportResult;
+import com.github.d.romanov.spotify.importer.model.ImportType;
 import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import com.github.d.romanov.spotify.importer.model.UploadedFile;
 import com.github.d.romanov.spotify.importer.model.dto.AddTracksToPlaylistRequest;
 import com.github.d.romanov.spotify.importer.model.dto.CreatePlaylistRequest;
 import com.github.d.romanov.spotify.importer.model.dto.Playlist;
 import com.github.d.romanov.spotify.importer.model.dto.UploadRequest;
+import com.github.d.romanov.spotify.importer.service.journal.ImportJournal;
+import com.github.d.romanov.spotify.importer.service.journal.ImportJournals;
 import com.github.d.romanov.spotify.importer.service.parser.ParserService;
-import com.github.d.romanov.spotify.importer.utils.ListUtils;
+import com.github.d.romanov.spotify.importer.utils.LongHashSet;
+import com.github.d.romanov.spotify.importer.utils.QueryNormalizer;
+import com.github.d.romanov.spotify.importer.utils.TrackIdSet;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
@@ -16,10 +27,23 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import static org.springframework.util.StringUtils.hasText;
 
@@ -28,73 +52,316 @@ import static org.springframework.util.StringUtils.hasText;
 @RequiredArgsConstructor
 public class ImporterService {
 
+    private static final int LISTED_BATCH_SIZE = 50;
+
     private final SpotifyClient spotifyClient;
     private final ParserService parserService;
+    private final SpotifyProps spotifyProps;
+    private final ImportProps importProps;
+    private final ImportJournals importJournals;
+    private final ImportMetrics importMetrics;
 
 
     /**
-     * @param upload Uploaded form data with file and import parameters
-     * @return {@link ImportResult} of import status (true if all import requests succeeded), and list of tracks not found in Spotify
+     * @param upload       Uploaded form data with import parameters
+     * @param uploadedFile Spooled upload, released by the caller
+     * @param progress     Counters updated while import runs
+     * @return {@link ImportResult} of import status (true if all import requests succeeded), numbers of imported
+     * and skipped duplicate tracks, and tracks not found in Spotify, which have to be released by the caller
      */
-    public Mono<ImportResult> importTracks(UploadRequest upload) {
-        List<Track> notFoundTracks = new ArrayList<>();
-        return parserService.parseTracks(upload.file())
+    public Mono<ImportResult> importTracks(UploadRequest upload, UploadedFile uploadedFile, ImportProgress progress) {
+        //journal of a failed or cancelled import is kept, so that it is resumed when the file is uploaded again
+        return Mono.usingWhen(importJournals.open(upload, uploadedFile),
+                        journal -> Mono.usingWhen(Mono.fromSupplier(this::newNotFoundTracks),
+                                notFoundTracks -> importTracks(upload, uploadedFile, progress, journal, notFoundTracks),
+                                //on success, not found tracks are released by the consumer of the result
+                                notFoundTracks -> Mono.empty(),
+                                (notFoundTracks, throwable) -> notFoundTracks.release(),
+                                NotFoundTracks::release),
+                        ImportJournal::complete,
+                        (journal, throwable) -> journal.close(),
+                        ImportJournal::close)
+                .contextWrite(Context.of(ImportProgress.class, progress));
+    }
+
+    private Mono<ImportResult> importTracks(UploadRequest upload, UploadedFile uploadedFile, ImportProgress progress,
+                                            ImportJournal journal, NotFoundTracks notFoundTracks) {
+        LongHashSet searchKeys = new LongHashSet();
+        TrackIdSet foundIds = new TrackIdSet();
+        LongAdder duplicates = new LongAdder();
+        Map<Long, List<Track>> failedTracks = new ConcurrentSkipListMap<>();
+        Flux<TrackId> trackIds = parserService.parseTracks(uploadedFile)
+                .doOnNext(track -> progress.onParsed())
+                //same song is often listed several times (i.e. in albums and compilations), search it once
+                .filter(track -> {
+                    if (!searchKeys.add(QueryNormalizer.keyHash(track))) {
+                        log.debug("{} is a duplicate, skipped", track);
+                        duplicates.increment();
+                        return false;
+                    }
+                    return true;
+                })
                 .publishOn(Schedulers.parallel())
-                .flatMap(track -> spotifyClient.searchTrackId(track)
-                                .onErrorResume(throwable -> {
-                                    log.debug("Caught error: {}", throwable.toString());
-                                    return Mono.just(track);
-                                }),
-                        //process tracks one by one in DEFAULT_POOL_SIZE parallel threads
-                        //to limit Spotify API calls to avoid 429 Too Many Requests
-                        Schedulers.DEFAULT_POOL_SIZE, 1)
+                //tracks are resolved concurrently, but emitted in file order
+                .buffer(LISTED_BATCH_SIZE)
+                .index()
+                .flatMapSequential(batch -> resolveTracks(batch.getT1(), batch.getT2(), journal, failedTracks),
+                        resolveConcurrency(), 1)
+                .flatMapIterable(Function.identity())
+                //failed lookups are retried after all batches, so found tracks keep their order between attempts
+                .concatWith(Flux.defer(() -> Flux.fromIterable(failedTracks.entrySet()))
+                        .flatMapSequential(failed -> retryTracks(failed.getKey(), failed.getValue(), journal),
+                                resolveConcurrency(), 1)
+                        .flatMapIterable(Function.identity()))
                 .filter(track -> {
-                    if (track.getId() == null) {
+                    progress.onResolved(track.id() != null);
+                    importMetrics.onResolved(track.id() != null);
+                    if (track.id() == null) {
                         log.debug("{} not found", track);
                         notFoundTracks.add(track);
                         return false;
                     }
                     return true;
                 })
-                .map(Track::getId)
-                .collectList()
-                .flatMap(trackIds -> {
-                    Mono<Boolean> isImportSuccessful = switch (upload.importType()) {
-                        case LIKED_SONGS -> importToLikedTracks(trackIds);
-                        case PLAYLIST -> addTracksToPlaylist(trackIds, upload);
-                    };
-                    return isImportSuccessful
-                            .map(isImpSuccess -> new ImportResult(isImpSuccess, notFoundTracks));
+                .map(Track::id)
+                //different queries may find the same track, which would be written twice
+                .filter(trackId -> {
+                    if (!foundIds.add(trackId)) {
+                        duplicates.increment();
+                        return false;
+                    }
+                    return true;
+                })
+                //found tracks are emitted in the same order on every attempt, so written ones are a prefix,
+                //unless existing tracks are skipped, then written ones are skipped as existing
+                .skip(upload.skipExisting() ? 0 : journal.getWritten());
+
+        progress.onWritten(journal.getWritten());
+        Mono<Boolean> isImportSuccessful = switch (upload.importType()) {
+            case LIKED_SONGS -> importToLikedTracks(trackIds, upload, progress, journal);
+            case PLAYLIST -> addTracksToPlaylist(trackIds, upload, uploadedFile, progress, journal);
+        };
+        return isImportSuccessful
+                .delayUntil(isImpSuccess -> notFoundTracks.complete())
+                .map(isImpSuccess -> new ImportResult(isImpSuccess, progress.getWritten(), duplicates.sum(),
+                        progress.getExisting(), notFoundTracks));
+    }
+
+    private NotFoundTracks newNotFoundTracks() {
+        ImportProps.NotFound props = importProps.getNotFound();
+        return new NotFoundTracks(props.getSampleSize(), Path.of(props.getSpillDirectory()));
+    }
+
+    /**
+     * Resolved batch is journaled before its tracks are written, and replayed from the journal when import is resumed.
+     * Tracks whose lookup failed are journaled as such and left out of the batch, to be retried from
+     * {@code failedTracks}, instead of being replayed as not found.
+     *
+     * @param index        Number of the batch in file
+     * @param failedTracks Tracks with failed lookups by batch number
+     */
+    private Mono<List<Track>> resolveTracks(long index, List<Track> batch, ImportJournal journal,
+                                            Map<Long, List<Track>> failedTracks) {
+        List<Track> resolved = journal.getResolved(index, batch);
+        if (resolved != null) {
+            return Mono.just(withoutFailed(index, batch, new ResolvedBatch(resolved, journal.getFailed(index)),
+                    failedTracks));
+        }
+        return resolveTracks(batch)
+                .flatMap(resolvedBatch -> journal.onResolved(index, resolvedBatch.tracks(), resolvedBatch.failed())
+                        .thenReturn(withoutFailed(index, batch, resolvedBatch, failedTracks)));
+    }
+
+    /**
+     * Retry is journaled before its tracks are written, like a batch, and tracks failed again are taken
+     * for not found, so that retried tracks are replayed in the same order on every attempt
+     *
+     * @param failed Tracks of the batch whose lookup failed
+     */
+    private Mono<List<Track>> retryTracks(long index, List<Track> failed, ImportJournal journal) {
+        List<Track> retried = journal.getRetried(index, failed);
+        if (retried != null) {
+            return Mono.just(retried);
+        }
+        return resolveTracks(failed)
+                .flatMap(resolvedBatch -> journal.onRetried(index, resolvedBatch.tracks())
+                        .thenReturn(resolvedBatch.tracks()));
+    }
+
+    private static List<Track> withoutFailed(long index, List<Track> batch, ResolvedBatch resolvedBatch,
+                                             Map<Long, List<Track>> failedTracks) {
+        if (resolvedBatch.failed().isEmpty()) {
+            return resolvedBatch.tracks();
+        }
+        log.debug("Lookup of {} tracks of batch {} failed, they are retried later", resolvedBatch.failed().size(),
+                index);
+        failedTracks.put(index, resolvedBatch.failed().stream()
+                .map(batch::get)
+                .toList());
+        Set<Integer> failed = new HashSet<>(resolvedBatch.failed());
+        return IntStream.range(0, batch.size())
+                .filter(i -> !failed.contains(i))
+                .mapToObj(resolvedBatch.tracks()::get)
+                .toList();
+    }
+
+    /**
+     * Tracks listed by URI or link are only validated, 50 per request, others are searched
+     *
+     * @return Tracks of the batch in the same order, with id of found tracks, and positions of failed lookups
+     */
+    private Mono<ResolvedBatch> resolveTracks(List<Track> batch) {
+        Set<Track> failed = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        List<Track> listed = batch.stream()
+                .filter(track -> track.id() != null)
+                .toList();
+        Mono<List<Track>> listedTracks = listed.isEmpty() ? Mono.just(List.of())
+                : spotifyClient.getTracks(listed)
+                .onErrorResume(throwable -> {
+                    log.debug("Caught error: {}", throwable.toString());
+                    failed.addAll(listed);
+                    return Mono.just(listed.stream()
+                            .map(track -> track.withId(null))
+                            .toList());
                 });
+        Mono<List<Track>> searchedTracks = Flux.fromIterable(batch)
+                .filter(track -> track.id() == null)
+                .flatMapSequential(track -> spotifyClient.searchTrackId(track)
+                        .onErrorResume(throwable -> {
+                            log.debug("Caught error: {}", throwable.toString());
+                            failed.add(track);
+                            return Mono.just(track);
+                        }))
+                .collectList();
+
+        return Mono.zip(listedTracks, searchedTracks, (validated, searched) -> {
+            Iterator<Track> validatedIterator = validated.iterator();
+            Iterator<Track> searchedIterator = searched.iterator();
+            List<Track> tracks = batch.stream()
+                    .map(track -> track.id() != null ? validatedIterator.next() : searchedIterator.next())
+                    .toList();
+            return new ResolvedBatch(tracks, IntStream.range(0, batch.size())
+                    .filter(i -> failed.contains(batch.get(i)))
+                    .boxed()
+                    .toList());
+        });
+    }
+
+    /**
+     * Requests in flight are limited by AdaptiveLimiter to avoid 429 Too Many Requests,
+     * this only keeps enough batches resolving to saturate it
+     */
+    private int resolveConcurrency() {
+        return spotifyProps.getLimiter().getMaxConcurrency() / LISTED_BATCH_SIZE + 1;
+    }
+
+    /**
+     * Liked songs are ordered by the time they are added, so batches are written one after another.
+     * If existing tracks are skipped, each batch is checked against Liked Songs first, and only missing tracks are added.
+     */
+    private Mono<Boolean> importToLikedTracks(Flux<TrackId> trackIds, UploadRequest upload, ImportProgress progress,
+                                              ImportJournal journal) {
+        AtomicLong written = new AtomicLong(journal.getWritten());
+        return batches(trackIds, 50)
+                .concatMap(batch -> (upload.skipExisting() ? missingLikedTracks(batch, progress) : Mono.just(batch))
+                        .filter(missing -> !missing.isEmpty())
+                        .flatMap(missing -> importMetrics.timeWrite(ImportType.LIKED_SONGS,
+                                        spotifyClient.addToLikedTracks(missing))
+                                .flatMap(isAdded -> {
+                                    if (!isAdded) {
+                                        return Mono.just(false);
+                                    }
+                                    progress.onWritten(missing.size());
+                                    return journal.onWritten(written.addAndGet(missing.size())).thenReturn(true);
+                                }))
+                        .defaultIfEmpty(true))
+                .reduce(true, (b1, b2) -> b1 && b2);
     }
 
-    private Mono<Boolean> importToLikedTracks(List<String> trackIds) {
-        return Flux.fromIterable(ListUtils.splitList(trackIds, 50))
-                .flatMap(spotifyClient::addToLikedTracks)
-                .reduce((b1, b2) -> b1 && b2);
+    private Mono<List<TrackId>> missingLikedTracks(List<TrackId> batch, ImportProgress progress) {
+        return spotifyClient.containsLikedTracks(batch)
+                .map(contains -> {
+                    List<TrackId> missing = new ArrayList<>(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (i < contains.size() && Boolean.TRUE.equals(contains.get(i))) {
+                            continue;
+                        }
+                        missing.add(batch.get(i));
+                    }
+                    progress.onExisting(batch.size() - missing.size());
+                    return missing;
+                });
     }
 
-    private Mono<Boolean> addTracksToPlaylist(List<String> trackIds, UploadRequest upload) {
-        return Mono.just(upload.playlistId())
+    /**
+     * Each batch is inserted after the previous one, at the top of the playlist, in file order.
+     * Spotify doesn't support snapshot preconditions for adding tracks, so the next batch is only sent
+     * when the previous one has returned the snapshot id of the playlist version containing it.
+     * Playlist is created with the first batch, or taken from the journal if it was created by previous attempt.
+     * If existing tracks are skipped, all track ids of the playlist are fetched before the first batch,
+     * and only missing tracks are added.
+     */
+    private Mono<Boolean> addTracksToPlaylist(Flux<TrackId> trackIds, UploadRequest upload,
+                                              UploadedFile uploadedFile, ImportProgress progress,
+                                              ImportJournal journal) {
+        Mono<String> playlist = Mono.justOrEmpty(journal.getPlaylistId())
+                .switchIfEmpty(Mono.just(upload.playlistId()))
                 .filter(playlistId -> !"newPlaylist".equals(playlistId))
-                .switchIfEmpty(createPlaylist(upload))
-                .flatMapMany(playlistId -> {
-                    List<String> uris = trackIds.stream()
-                            .map(id -> "spotify:track:" + id)
-                            .collect(Collectors.toList());
-                    return Flux.fromIterable(ListUtils.splitList(uris, 100))
-                            .map(AddTracksToPlaylistRequest::new)
-                            .flatMap(request -> spotifyClient.addTracksToPlaylist(request, playlistId));
-                })
-                .reduce((b1, b2) -> b1 && b2);
+                .switchIfEmpty(Mono.defer(() -> createPlaylist(upload, uploadedFile)
+                        .flatMap(playlistId -> journal.onPlaylistCreated(playlistId).thenReturn(playlistId))))
+                .cache();
+        Flux<TrackId> missingTrackIds = trackIds;
+        if (upload.skipExisting()) {
+            Mono<TrackIdSet> existingTrackIds = playlist.flatMap(spotifyClient::getPlaylistTrackIds)
+                    .cache();
+            missingTrackIds = trackIds.filterWhen(trackId -> existingTrackIds.map(existing -> {
+                if (existing.contains(trackId)) {
+                    progress.onExisting(1);
+                    return false;
+                }
+                return true;
+            }));
+        }
+        AtomicInteger position = new AtomicInteger((int) journal.getWritten());
+        return batches(missingTrackIds, 100)
+                .concatMap(batch -> playlist.flatMap(playlistId -> {
+                    List<String> uris = batch.stream()
+                            .map(TrackId::toUri)
+                            .toList();
+                    int offset = position.getAndAdd(uris.size());
+                    return importMetrics.timeWrite(ImportType.PLAYLIST,
+                                    spotifyClient.addTracksToPlaylist(new AddTracksToPlaylistRequest(uris, offset), playlistId))
+                            .doOnNext(snapshotId -> {
+                                progress.onWritten(uris.size());
+                                log.debug("Added {} tracks to playlist {}, snapshot {}",
+                                        uris.size(), playlistId, snapshotId);
+                            })
+                            .flatMap(snapshotId -> journal.onWritten(offset + uris.size()).thenReturn(snapshotId));
+                }))
+                .map(snapshotId -> true)
+                .reduce(true, (b1, b2) -> b1 && b2);
     }
 
-    private Mono<String> createPlaylist(UploadRequest upload) {
+    /**
+     * Batch is written once it is full, or after {@code spotify.writer.flush-interval} while searches are slow
+     */
+    private Flux<List<TrackId>> batches(Flux<TrackId> trackIds, int batchSize) {
+        return trackIds.bufferTimeout(batchSize, spotifyProps.getWriter().getFlushInterval())
+                //bufferTimeout fails if a batch times out while the previous one is still written,
+                //pending batches are only ids and are bounded by the search rate anyway
+                .onBackpressureBuffer();
+    }
+
+    private Mono<String> createPlaylist(UploadRequest upload, UploadedFile uploadedFile) {
         String name = hasText(upload.newPlaylistName()) ? upload.newPlaylistName()
-                : FilenameUtils.getBaseName(upload.file().filename());
+                : FilenameUtils.getBaseName(uploadedFile.filename());
 
         return spotifyClient.createPlaylist(new CreatePlaylistRequest(name, false))
                 .map(Playlist::id);
     }
 
+    /**
+     * @param failed Positions in the batch of tracks whose lookup failed, rather than found nothing
+     */
+    private record ResolvedBatch(List<Track> tracks, List<Integer> failed) {}
 }
@@ -0,0 +1,251 @@
+package com.github.d.romanov.spotify.importer.service;
+
+import com.github.d.romanov.spotify.importer.model.Track;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Stream;
+
+/**
+ * Tracks not found during an import, safe for concurrent producers without locks.
+ * <p>
+ * First {@code sampleSize} tracks are kept in memory, to be rendered right away. Every following track is queued
+ * and appended to a temp file, one {@code trackName \t artistName} line each, by a single
+ * {@link Schedulers#boundedElastic()} worker, so producers on event loop and parallel threads never block on disk.
+ * The count is exact and the full list is available via {@link #readAll()}, while heap usage doesn't grow with
+ * the number of misses.
+ * <p>
+ * Producers call {@link #add(Track)}, then {@link #complete()} once, after all of them are done.
+ * Temp file lives until {@link #release()} is called, tracks added after that are dropped.
+ */
+
+@Slf4j
+public class NotFoundTracks {
+
+    private static final char SEPARATOR = '\t';
+
+    private final int sampleSize;
+    private final Path directory;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicReferenceArray<Track> sample;
+    private final Queue<Track> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean released = new AtomicBoolean();
+    private final Scheduler.Worker spillWorker = Schedulers.boundedElastic().createWorker();
+    private volatile Path spillFile;
+    private volatile IOException spillError;
+    //only accessed by spill worker
+    private BufferedWriter writer;
+    private boolean closed;
+
+    public NotFoundTracks(int sampleSize, Path directory) {
+        this.sampleSize = sampleSize;
+        this.directory = directory;
+        this.sample = new AtomicReferenceArray<>(sampleSize);
+    }
+
+    public void add(Track track) {
+        if (released.get()) {
+            return;
+        }
+        long index = count.getAndIncrement();
+        if (index < sampleSize) {
+            sample.set((int) index, track);
+            return;
+        }
+        pending.offer(track);
+        //only the producer that finds the queue idle schedules a drain, others leave their tracks to it
+        if (wip.getAndIncrement() == 0) {
+            try {
+                spillWorker.schedule(this::drain);
+            } catch (RejectedExecutionException e) {
+                //released concurrently
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Flushes spilled tracks, must be subscribed after the last {@link #add(Track)} returned
+     *
+     * @return Error if tracks couldn't be spilled
+     */
+    public Mono<Void> complete() {
+        return onSpillWorker(() -> {
+            Track track;
+            while ((track = pending.poll()) != null) {
+                write(track);
+            }
+            closeWriter();
+            if (spillError != null) {
+                throw new UncheckedIOException("Failed to spill not found tracks to " + spillFile, spillError);
+            }
+            if (spillFile != null) {
+                log.debug("Spilled {} not found tracks to {}", count() - sampleSize, spillFile);
+            }
+        });
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @return Tracks kept in memory, first of all not found
+     */
+    public List<Track> sample() {
+        int size = (int) Math.min(count(), sampleSize);
+        List<Track> tracks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tracks.add(sample.get(i));
+        }
+        return tracks;
+    }
+
+    /**
+     * @return Whether some tracks are only available via {@link #readAll()}
+     */
+    public boolean isTruncated() {
+        return count() > sampleSize;
+    }
+
+    /**
+     * @return All not found tracks, in the order they were added in
+     */
+    public Flux<Track> readAll() {
+        Path file = spillFile;
+        if (file == null) {
+            return Flux.fromIterable(sample());
+        }
+        return Flux.fromIterable(sample())
+                .concatWith(Flux.using(() -> Files.lines(file, StandardCharsets.UTF_8), Flux::fromStream, Stream::close)
+                        .map(NotFoundTracks::parse)
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * Closes and deletes the temp file, once. Can be called before {@link #complete()}, if the import failed.
+     */
+    public Mono<Void> release() {
+        if (!released.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        return onSpillWorker(() -> {
+                    pending.clear();
+                    closeWriter();
+                    Path file = spillFile;
+                    if (file != null) {
+                        try {
+                            Files.deleteIfExists(file);
+                        } catch (IOException e) {
+                            log.warn("Failed to delete not found tracks file {}", file, e);
+                        }
+                    }
+                })
+                .doFinally(signal -> spillWorker.dispose());
+    }
+
+    /**
+     * @return Line of the temp file and of the full list download
+     */
+    public static String format(Track track) {
+        return escape(track.trackName()) + SEPARATOR + escape(track.artistName());
+    }
+
+    /**
+     * Runs on spill worker, after the writes scheduled before it
+     */
+    private Mono<Void> onSpillWorker(Runnable task) {
+        return Mono.create(sink -> {
+            try {
+                spillWorker.schedule(() -> {
+                    try {
+                        task.run();
+                        sink.success();
+                    } catch (RuntimeException e) {
+                        sink.error(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                sink.error(new IllegalStateException("Not found tracks are already released", e));
+            }
+        });
+    }
+
+    private void drain() {
+        int missed = 1;
+        do {
+            Track track;
+            while ((track = pending.poll()) != null) {
+                write(track);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void closeWriter() {
+        closed = true;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (spillError == null) {
+                spillError = e;
+            }
+        }
+        writer = null;
+    }
+
+    /**
+     * Spill error is reported by {@link #complete()}, tracks after it are dropped
+     */
+    private void write(Track track) {
+        if (spillError != null || closed) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                Files.createDirectories(directory);
+                spillFile = Files.createTempFile(directory, "not-found-", ".tsv");
+                writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8);
+            }
+            writer.append(format(track))
+                    .append('\n');
+        } catch (IOException e) {
+            log.warn("Failed to spill not found tracks to {}", spillFile, e);
+            spillError = e;
+        }
+    }
+
+    private static String escape(String name) {
+        return name == null ? "" : name.replace(SEPARATOR, ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static Track parse(String line) {
+        int separator = line.indexOf(SEPARATOR);
+        return Track.builder()
+                .trackName(line.substring(0, separator))
+                .artistName(line.substring(separator + 1))
+                .build();
+    }
+}
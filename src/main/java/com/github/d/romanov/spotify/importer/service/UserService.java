@@ -2,7 +2,6 @@ package com.github.d.romanov.spotify.importer.service;
 
 import com.github.d.romanov.spotify.importer.client.SpotifyClient;
 import com.github.d.romanov.spotify.importer.model.dto.Playlist;
-import com.github.d.romanov.spotify.importer.model.dto.PlaylistsResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.oauth2.core.user.OAuth2User;
@@ -20,8 +19,8 @@ public class UserService {
     private final SpotifyClient spotifyClient;
 
     public Mono<List<Playlist>> getUserPlaylists(OAuth2User principal) {
+        //Spotify can't filter playlists by owner
         return spotifyClient.getUserPlaylists()
-                .map(PlaylistsResponse::items)
                 .map(playlists -> playlists.stream()
                         .filter(playlist -> playlist.owner().id().equals(principal.getAttribute("id")))
                         .collect(Collectors.toList()));
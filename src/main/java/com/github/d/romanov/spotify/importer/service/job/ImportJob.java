@@ -0,0 +1,67 @@
+package com.github.d.romanov.spotify.importer.service.job;
+
+import com.github.d.romanov.spotify.importer.model.ImportProgress;
+import com.github.d.romanov.spotify.importer.model.ImportResult;
+import com.github.d.romanov.spotify.importer.model.UploadedFile;
+import com.github.d.romanov.spotify.importer.model.dto.UploadRequest;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.context.SecurityContext;
+
+import java.util.UUID;
+
+/**
+ * Import of a single upload, run in background by {@link ImportJobService}
+ */
+
+@Getter
+@RequiredArgsConstructor
+public class ImportJob {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    /**
+     * Name of principal who uploaded the file, only they can see the job
+     */
+    private final String principal;
+    /**
+     * Upload request without the file part
+     */
+    private final UploadRequest upload;
+    private final UploadedFile uploadedFile;
+    /**
+     * Security context of the upload request, import requests are authorized with it.
+     * Nothing else of the request is kept, it has ended long before the job.
+     */
+    private final SecurityContext securityContext;
+    private final ImportProgress progress = new ImportProgress();
+    private volatile State state = State.QUEUED;
+    private volatile ImportResult result;
+    private volatile String error;
+
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    public ImportJobStatus getStatus() {
+        return new ImportJobStatus(id, state, progress.getParsed(), progress.getSearched(), progress.getFound(),
+                progress.getWritten(), progress.getExisting(), progress.getThrottled(), error);
+    }
+
+    void start() {
+        state = State.RUNNING;
+    }
+
+    void complete(ImportResult result) {
+        this.result = result;
+        state = State.COMPLETED;
+    }
+
+    void fail(Throwable throwable) {
+        error = throwable.toString();
+        state = State.FAILED;
+    }
+}
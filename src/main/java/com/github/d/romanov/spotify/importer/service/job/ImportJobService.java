@@ -0,0 +1,164 @@
+package com.github.d.romanov.spotify.importer.service.job;
+
+import com.github.d.romanov.spotify.importer.config.props.ImportProps;
+import com.github.d.romanov.spotify.importer.model.ImportResult;
+import com.github.d.romanov.spotify.importer.model.dto.UploadRequest;
+import com.github.d.romanov.spotify.importer.service.ImporterService;
+import com.github.d.romanov.spotify.importer.service.upload.UploadSpooler;
+import com.github.d.romanov.spotify.importer.utils.TokenUtils;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs imports in background, so that upload request returns right away instead of waiting for the whole import.
+ * <p>
+ * Upload is spooled to disk before the job is accepted. Jobs wait in an admission queue of
+ * {@code import.jobs.max-queued}, uploads beyond it are rejected, and at most {@code import.jobs.max-running}
+ * of them run at once, so a node doesn't start a search fan-out for every upload.
+ * <p>
+ * Finished jobs are kept for {@code import.jobs.result-ttl}, then their not found tracks are released.
+ */
+
+@Slf4j
+@Service
+public class ImportJobService {
+
+    private static final Duration EMIT_TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration RELEASE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final ImporterService importerService;
+    private final UploadSpooler uploadSpooler;
+    private final ImportProps.Jobs props;
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final Sinks.Many<ImportJob> queue = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Disposable worker;
+
+    public ImportJobService(ImporterService importerService, UploadSpooler uploadSpooler, ImportProps importProps) {
+        this.importerService = importerService;
+        this.uploadSpooler = uploadSpooler;
+        this.props = importProps.getJobs();
+        this.worker = queue.asFlux()
+                .flatMap(this::run, props.getMaxRunning())
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void dispose() {
+        worker.dispose();
+        jobs.values().forEach(this::release);
+        //running jobs release their spool files on cancel, queued ones never started
+        Flux.fromIterable(jobs.values())
+                .flatMap(job -> uploadSpooler.release(job.getUploadedFile()))
+                .blockLast(RELEASE_TIMEOUT);
+    }
+
+    /**
+     * @return Queued job, or {@link IllegalStateException} if admission queue is full
+     */
+    public Mono<ImportJob> submit(UploadRequest upload) {
+        return Mono.defer(() -> {
+            if (queued.incrementAndGet() > props.getMaxQueued()) {
+                queued.decrementAndGet();
+                return Mono.error(new IllegalStateException("Too many imports are waiting, try again later"));
+            }
+            return ReactiveSecurityContextHolder.getContext()
+                    .filter(securityContext -> securityContext.getAuthentication() != null)
+                    .switchIfEmpty(Mono.error(new IllegalStateException("Import requires authenticated user")))
+                    .flatMap(securityContext -> uploadSpooler.spool(upload)
+                            .map(uploadedFile -> new ImportJob(securityContext.getAuthentication().getName(),
+                                    upload.withoutFile(), uploadedFile, securityContext)))
+                    .flatMap(this::enqueue)
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_COMPLETE) {
+                            queued.decrementAndGet();
+                        }
+                    });
+        });
+    }
+
+    private Mono<ImportJob> enqueue(ImportJob job) {
+        jobs.put(job.getId(), job);
+        //emitNext would silently drop the job once the worker is cancelled, so the result is checked here
+        long deadline = System.nanoTime() + EMIT_TIMEOUT.toNanos();
+        Sinks.EmitResult result;
+        while ((result = queue.tryEmitNext(job)) == Sinks.EmitResult.FAIL_NON_SERIALIZED
+                && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        if (result.isFailure()) {
+            //job will never run, so its spool file is not released at the end of it
+            jobs.remove(job.getId());
+            return uploadSpooler.release(job.getUploadedFile())
+                    .then(Mono.error(new IllegalStateException(
+                            "Import can't be queued (" + result + "), try again later")));
+        }
+        log.debug("Import job {} of {} is queued", job.getId(), job.getPrincipal());
+        return Mono.just(job);
+    }
+
+    /**
+     * @return Job of the current principal, empty if it doesn't exist, has expired or belongs to someone else
+     */
+    public Mono<ImportJob> getJob(String id) {
+        return Mono.justOrEmpty(jobs.get(id))
+                .filterWhen(job -> TokenUtils.getPrincipalName()
+                        .map(job.getPrincipal()::equals)
+                        .defaultIfEmpty(false));
+    }
+
+    /**
+     * @return Status of the job every {@code import.jobs.progress-interval}, until it is finished
+     */
+    public Flux<ImportJobStatus> getProgress(String id) {
+        return getJob(id)
+                .flatMapMany(job -> Flux.interval(Duration.ZERO, props.getProgressInterval())
+                        .map(tick -> job.getStatus())
+                        .takeUntil(ImportJobStatus::isFinished));
+    }
+
+    private Mono<Void> run(ImportJob job) {
+        queued.decrementAndGet();
+        job.start();
+        log.debug("Import job {} is started", job.getId());
+        return Mono.usingWhen(Mono.just(job.getUploadedFile()),
+                        uploadedFile -> importerService.importTracks(job.getUpload(), uploadedFile, job.getProgress()),
+                        uploadSpooler::release)
+                //job is detached from the upload request, but Spotify requests are still made on behalf of its user
+                .contextWrite(ReactiveSecurityContextHolder.withSecurityContext(Mono.just(job.getSecurityContext())))
+                .doOnNext(job::complete)
+                .doOnError(throwable -> {
+                    log.error("Import job {} failed", job.getId(), throwable);
+                    job.fail(throwable);
+                })
+                .onErrorResume(throwable -> Mono.empty())
+                .doFinally(signal -> {
+                    log.debug("Import job {} is {}", job.getId(), job.getState());
+                    Mono.delay(props.getResultTtl())
+                            .subscribe(tick -> {
+                                jobs.remove(job.getId());
+                                release(job);
+                            });
+                })
+                .then();
+    }
+
+    private void release(ImportJob job) {
+        ImportResult result = job.getResult();
+        if (result != null) {
+            result.notFoundTracks().release().subscribe();
+        }
+    }
+}
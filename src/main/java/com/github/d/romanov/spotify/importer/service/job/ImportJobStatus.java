@@ -0,0 +1,25 @@
+package com.github.d.romanov.spotify.importer.service.job;
+
+import com.github.d.romanov.spotify.importer.model.ImportProgress;
+
+/**
+ * Snapshot of {@link ImportJob} sent as a progress event, see {@link ImportProgress} for the counters
+ *
+ * @param error Failure message if import failed
+ */
+public record ImportJobStatus(
+        String id,
+        ImportJob.State state,
+        long parsed,
+        long searched,
+        long found,
+        long written,
+        long existing,
+        long throttled,
+        String error
+) {
+
+    public boolean isFinished() {
+        return state == ImportJob.State.COMPLETED || state == ImportJob.State.FAILED;
+    }
+}
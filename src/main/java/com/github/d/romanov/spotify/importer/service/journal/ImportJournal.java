@@ -0,0 +1,314 @@
+package com.github.d.romanov.spotify.importer.service.journal;
+
+import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of a single import, one {@code crc \t type \t values} line per record:
+ * <ul>
+ *     <li>{@code input \t hash}: SHA-256 of the uploaded file, first line</li>
+ *     <li>{@code playlist \t id}: playlist created by the import</li>
+ *     <li>{@code resolved \t batch \t ids}: ids of a batch of resolved tracks in file order, "-" if not found,
+ *     "!" if lookup failed</li>
+ *     <li>{@code retried \t batch \t ids}: ids of the tracks of a batch whose lookup failed, after their retry,
+ *     "-" if not found or failed again</li>
+ *     <li>{@code written \t count}: number of found tracks written to Spotify so far</li>
+ * </ul>
+ * Every record is fsync'd before the import goes on, so after a crash only the last record may be lost.
+ * It is detected by CRC32 and truncated on open. Resolved batches are replayed instead of searched again,
+ * and tracks already written are skipped. Batch being written during the crash is written again.
+ * Failed lookups are replayed as failed, so that they are retried instead of being taken for not found,
+ * and retries are replayed like batches.
+ */
+
+@Slf4j
+public class ImportJournal {
+
+    private static final char SEPARATOR = '\t';
+    private static final String NOT_FOUND = "-";
+    private static final String FAILED = "!";
+    private static final String INPUT = "input";
+    private static final String PLAYLIST = "playlist";
+    private static final String RESOLVED = "resolved";
+    private static final String RETRIED = "retried";
+    private static final String WRITTEN = "written";
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Runnable onClose;
+    private final Map<Long, String[]> resolved = new HashMap<>();
+    private final Map<Long, String[]> retried = new HashMap<>();
+    private volatile String playlistId;
+    private volatile long written;
+
+    private ImportJournal(Path path, FileChannel channel, Runnable onClose) {
+        this.path = path;
+        this.channel = channel;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Opens existing journal of the same input, or creates a new one
+     */
+    static ImportJournal open(Path path, String inputHash, Runnable onClose) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ImportJournal journal = new ImportJournal(path, channel, onClose);
+        try {
+            if (!journal.load(inputHash)) {
+                channel.truncate(0);
+                journal.append(INPUT + SEPARATOR + inputHash);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * @return Whether the import is resumed, nothing to resume in a new journal
+     */
+    public boolean isResumed() {
+        return written > 0 || !resolved.isEmpty();
+    }
+
+    /**
+     * @return Playlist created by previous attempt of the import, {@code null} if none
+     */
+    public String getPlaylistId() {
+        return playlistId;
+    }
+
+    /**
+     * @return Number of found tracks written by previous attempts of the import
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return Tracks of the batch with ids resolved by previous attempt of the import, {@code null} if not resolved
+     */
+    public List<Track> getResolved(long batch, List<Track> tracks) {
+        String[] ids = resolved.get(batch);
+        if (ids == null || ids.length != tracks.size()) {
+            return null;
+        }
+        return withIds(tracks, ids);
+    }
+
+    /**
+     * @param failed Tracks of the batch whose lookup failed, in batch order
+     * @return Tracks with ids resolved by retry in previous attempt of the import, {@code null} if not retried
+     */
+    public List<Track> getRetried(long batch, List<Track> failed) {
+        String[] ids = retried.get(batch);
+        if (ids == null || ids.length != failed.size()) {
+            return null;
+        }
+        return withIds(failed, ids);
+    }
+
+    /**
+     * @return Positions of tracks of the batch whose lookup failed in previous attempt of the import
+     */
+    public List<Integer> getFailed(long batch) {
+        String[] ids = resolved.get(batch);
+        if (ids == null) {
+            return List.of();
+        }
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (FAILED.equals(ids[i])) {
+                failed.add(i);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @param failed Positions of tracks whose lookup failed, they have no id like not found ones
+     */
+    public Mono<Void> onResolved(long batch, List<Track> tracks, List<Integer> failed) {
+        if (resolved.containsKey(batch)) {
+            return Mono.empty();
+        }
+        StringBuilder line = new StringBuilder(RESOLVED).append(SEPARATOR).append(batch).append(SEPARATOR);
+        for (int i = 0; i < tracks.size(); i++) {
+            TrackId id = tracks.get(i).id();
+            line.append(i > 0 ? " " : "")
+                    .append(id != null ? id.toString() : failed.contains(i) ? FAILED : NOT_FOUND);
+        }
+        return appendAsync(line.toString());
+    }
+
+    /**
+     * @param tracks Tracks of the batch whose lookup failed, after their retry, without id if not found again
+     */
+    public Mono<Void> onRetried(long batch, List<Track> tracks) {
+        if (retried.containsKey(batch)) {
+            return Mono.empty();
+        }
+        StringBuilder line = new StringBuilder(RETRIED).append(SEPARATOR).append(batch).append(SEPARATOR);
+        for (int i = 0; i < tracks.size(); i++) {
+            TrackId id = tracks.get(i).id();
+            line.append(i > 0 ? " " : "").append(id != null ? id.toString() : NOT_FOUND);
+        }
+        return appendAsync(line.toString());
+    }
+
+    public Mono<Void> onPlaylistCreated(String playlistId) {
+        this.playlistId = playlistId;
+        return appendAsync(PLAYLIST + SEPARATOR + playlistId);
+    }
+
+    /**
+     * @param written Number of found tracks written so far, including previous attempts
+     */
+    public Mono<Void> onWritten(long written) {
+        this.written = written;
+        return appendAsync(WRITTEN + SEPARATOR + written);
+    }
+
+    /**
+     * Deletes the journal of a completed import
+     */
+    public Mono<Void> complete() {
+        return close()
+                .then(Mono.<Void>fromRunnable(() -> {
+                            try {
+                                Files.deleteIfExists(path);
+                            } catch (IOException e) {
+                                log.warn("Failed to delete import journal {}", path, e);
+                            }
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * Keeps the journal of an interrupted import, to be resumed later
+     */
+    public Mono<Void> close() {
+        return Mono.<Void>fromRunnable(() -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close import journal {}", path, e);
+                    } finally {
+                        onClose.run();
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * @return Whether journal holds records of the same input
+     */
+    private boolean load(String inputHash) throws IOException {
+        String content = Files.readString(path, StandardCharsets.UTF_8);
+        int position = 0;
+        int validLength = 0;
+        boolean isSameInput = false;
+        while (position < content.length()) {
+            int end = content.indexOf('\n', position);
+            if (end < 0) {
+                break;
+            }
+            String[] record = parse(content.substring(position, end));
+            if (record == null) {
+                break;
+            }
+            position = end + 1;
+            validLength = position;
+            if (!isSameInput) {
+                isSameInput = INPUT.equals(record[0]) && inputHash.equals(record[1]);
+                if (!isSameInput) {
+                    return false;
+                }
+                continue;
+            }
+            switch (record[0]) {
+                case PLAYLIST -> playlistId = record[1];
+                case RESOLVED -> resolved.put(Long.parseLong(record[1]), record[2].split(" "));
+                case RETRIED -> retried.put(Long.parseLong(record[1]), record[2].split(" "));
+                case WRITTEN -> written = Long.parseLong(record[1]);
+                default -> log.debug("Skipped unknown import journal record {}", record[0]);
+            }
+        }
+        if (isSameInput) {
+            //torn record of a crash is dropped, so that new records follow the last valid one
+            channel.truncate(content.substring(0, validLength).getBytes(StandardCharsets.UTF_8).length);
+            channel.position(channel.size());
+            log.debug("Resuming import from journal {}: {} resolved batches, {} tracks written",
+                    path, resolved.size(), written);
+        }
+        return isSameInput;
+    }
+
+    private static List<Track> withIds(List<Track> tracks, String[] ids) {
+        List<Track> resolvedTracks = new ArrayList<>(tracks.size());
+        for (int i = 0; i < ids.length; i++) {
+            boolean isFound = !NOT_FOUND.equals(ids[i]) && !FAILED.equals(ids[i]);
+            resolvedTracks.add(tracks.get(i).withId(isFound ? TrackId.of(ids[i]) : null));
+        }
+        return resolvedTracks;
+    }
+
+    /**
+     * @return Record type and values, {@code null} if CRC doesn't match
+     */
+    private static String[] parse(String line) {
+        int crcEnd = line.indexOf(SEPARATOR);
+        if (crcEnd < 0) {
+            return null;
+        }
+        String record = line.substring(crcEnd + 1);
+        if (!line.substring(0, crcEnd).equals(crc(record))) {
+            return null;
+        }
+        return record.split(String.valueOf(SEPARATOR));
+    }
+
+    private Mono<Void> appendAsync(String record) {
+        return Mono.<Void>fromRunnable(() -> {
+                    try {
+                        append(record);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to write import journal " + path, e);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private synchronized void append(String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((crc(record) + SEPARATOR + record + '\n').getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    private static String crc(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+}
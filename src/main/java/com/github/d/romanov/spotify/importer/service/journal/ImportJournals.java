@@ -0,0 +1,141 @@
+package com.github.d.romanov.spotify.importer.service.journal;
+
+import com.github.d.romanov.spotify.importer.config.props.ImportProps;
+import com.github.d.romanov.spotify.importer.model.UploadedFile;
+import com.github.d.romanov.spotify.importer.model.dto.UploadRequest;
+import com.github.d.romanov.spotify.importer.utils.TokenUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * Opens {@link ImportJournal}s in {@code import.journal.directory}, keyed by principal, import target and
+ * SHA-256 of the uploaded file. So when the same file is uploaded again for the same target (i.e. after a restart
+ * or a failed import), the import is resumed.
+ * <p>
+ * Journals of imports that were never resumed are deleted after {@code import.journal.ttl}.
+ */
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ImportJournals {
+
+    private static final String ANONYMOUS = "anonymous";
+    private static final String EXTENSION = ".journal";
+    private static final String NEW_PLAYLIST = "newPlaylist";
+
+    private final ImportProps importProps;
+    private final Set<String> openKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return Journal of the import, or {@link IllegalStateException} if the same import is already running
+     */
+    public Mono<ImportJournal> open(UploadRequest upload, UploadedFile uploadedFile) {
+        if (!uploadedFile.isSpooled()) {
+            return Mono.error(new IllegalStateException("Only spooled uploads can be journaled"));
+        }
+        return TokenUtils.getPrincipalName()
+                .defaultIfEmpty(ANONYMOUS)
+                .publishOn(Schedulers.boundedElastic())
+                .map(principal -> {
+                    try {
+                        Path directory = Files.createDirectories(Path.of(importProps.getJournal().getDirectory()));
+                        deleteExpired(directory);
+                        String inputHash = hash(uploadedFile.spoolFile());
+                        String key = key(principal + '\0' + target(upload, uploadedFile) + '\0' + inputHash);
+                        if (!openKeys.add(key)) {
+                            throw new IllegalStateException("The same file is already being imported");
+                        }
+                        try {
+                            return ImportJournal.open(directory.resolve(key + EXTENSION), inputHash,
+                                    () -> openKeys.remove(key));
+                        } catch (IOException | RuntimeException e) {
+                            openKeys.remove(key);
+                            throw e;
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to open import journal", e);
+                    }
+                });
+    }
+
+    private static String target(UploadRequest upload, UploadedFile uploadedFile) {
+        return switch (upload.importType()) {
+            case LIKED_SONGS -> upload.importType().name();
+            case PLAYLIST -> upload.importType().name() + '\0' + upload.playlistId() + '\0'
+                    + newPlaylistName(upload, uploadedFile);
+        };
+    }
+
+    /**
+     * New playlist is named after the file, unless the name is set
+     */
+    private static String newPlaylistName(UploadRequest upload, UploadedFile uploadedFile) {
+        if (!NEW_PLAYLIST.equals(upload.playlistId())) {
+            return "";
+        }
+        return hasText(upload.newPlaylistName()) ? upload.newPlaylistName() : uploadedFile.filename();
+    }
+
+    private void deleteExpired(Path directory) throws IOException {
+        Instant expiredBefore = Instant.now().minus(importProps.getJournal().getTtl());
+        try (Stream<Path> journals = Files.list(directory)) {
+            journals.filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+                    .forEach(path -> {
+                        try {
+                            if (Files.getLastModifiedTime(path).toInstant().isBefore(expiredBefore)) {
+                                Files.deleteIfExists(path);
+                                log.debug("Deleted expired import journal {}", path);
+                            }
+                        } catch (IOException e) {
+                            log.warn("Failed to delete expired import journal {}", path, e);
+                        }
+                    });
+        }
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String key(String value) {
+        return HexFormat.of().formatHex(sha256().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * First bytes of uploaded file, used by {@link FileParser#isApplicable(ContentPrefix)} to match file signature.
+ *
+ * @param contentType   Content type sent by browser, may be {@code null}
+ * @param extension     Lower case file extension, empty if absent
+ * @param contentLength File size hint, -1 if unknown
+ * @param text          Prefix decoded as UTF-8, without byte order mark
+ * @param hasBom        Whether file starts with UTF-8 byte order mark
+ */
+public record ContentPrefix(
+        MediaType contentType,
+        String extension,
+        long contentLength,
+        String text,
+        boolean hasBom
+) {
+
+    private static final String UTF8_BOM = "\uFEFF";
+
+    /**
+     * Copies up to {@code maxLength} bytes from buffers, without changing their read positions.
+     */
+    public static ContentPrefix of(String filename, MediaType contentType, long contentLength,
+                                   List<DataBuffer> dataBuffers, int maxLength) {
+        byte[] bytes = new byte[maxLength];
+        int length = 0;
+        for (DataBuffer dataBuffer : dataBuffers) {
+            for (int i = dataBuffer.readPosition(); i < dataBuffer.writePosition() && length < maxLength; i++) {
+                bytes[length++] = dataBuffer.getByte(i);
+            }
+        }
+
+        String text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        boolean hasBom = text.startsWith(UTF8_BOM);
+        return new ContentPrefix(
+                contentType,
+                FilenameUtils.getExtension(filename).toLowerCase(),
+                contentLength,
+                hasBom ? text.substring(UTF8_BOM.length()) : text,
+                hasBom);
+    }
+
+    public boolean isContentType(MediaType mediaType) {
+        return contentType != null && mediaType.equalsTypeAndSubtype(contentType);
+    }
+
+    public boolean hasExtension(String... extensions) {
+        for (String ext : extensions) {
+            if (ext.equals(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether prefix starts with signature, leading whitespace ignored
+     */
+    public boolean startsWith(String signature) {
+        return text.stripLeading().startsWith(signature);
+    }
+
+    public boolean contains(String signature) {
+        return text.contains(signature);
+    }
+
+    /**
+     * @return First line of the prefix, possibly truncated if it is longer than the prefix
+     */
+    public String firstLine() {
+        int end = text.indexOf('\n');
+        return (end < 0 ? text : text.substring(0, end)).strip();
+    }
+}
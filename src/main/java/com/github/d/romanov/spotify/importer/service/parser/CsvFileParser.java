@@ -0,0 +1,91 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import com.github.d.romanov.spotify.importer.config.props.ParserProps;
+import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import com.github.d.romanov.spotify.importer.service.parser.tokenizer.RecordTokenizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Parser for csv file with header row, i.e. <a href="https://github.com/watsonbox/exportify">Exportify</a> export.
+ * Track and artist columns are found by header names, other columns are ignored.
+ * If there is a track URI or id column, i.e. Exportify "Track URI", tracks having it are not searched.
+ */
+
+@Slf4j
+@RequiredArgsConstructor
+@Service
+@Order(2)
+public class CsvFileParser implements FileParser {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private static final List<String> TRACK_NAME_COLUMNS = List.of("track name", "name", "title", "track");
+    private static final List<String> ARTIST_NAME_COLUMNS = List.of("artist name(s)", "artist name", "artist", "artists");
+    private static final List<String> TRACK_ID_COLUMNS = List.of("track uri", "spotify uri", "uri", "spotify id",
+            "track id");
+
+    private final ParserProps parserProps;
+
+    @Override
+    public boolean isApplicable(ContentPrefix prefix) {
+        return prefix.isContentType(TEXT_CSV) || prefix.hasExtension("csv")
+                || prefix.firstLine().contains("\"Track Name\"");
+    }
+
+    @Override
+    public Flux<Track> parseTracks(Flux<DataBuffer> content) {
+        ParserProps.Csv csv = parserProps.getCsv();
+        return RecordTokenizer.tokenize(content, () -> new RecordTokenizer(csv.getDelimiter(), csv.getQuote()))
+                .switchOnFirst((signal, records) -> {
+                    if (!signal.hasValue()) {
+                        return records.thenMany(Flux.<Track>empty());
+                    }
+                    Columns columns = Columns.of(signal.get());
+                    if (columns.trackName() < 0) {
+                        return Flux.error(new IllegalStateException("No track name column found in csv header"));
+                    }
+                    return records.skip(1)
+                            .filter(fields -> fields.length > columns.trackName())
+                            .map(columns::toTrack);
+                });
+    }
+
+    private record Columns(int trackName, int artistName, int trackId) {
+
+        static Columns of(String[] header) {
+            return new Columns(indexOf(header, TRACK_NAME_COLUMNS), indexOf(header, ARTIST_NAME_COLUMNS),
+                    indexOf(header, TRACK_ID_COLUMNS));
+        }
+
+        private static int indexOf(String[] header, List<String> names) {
+            for (String name : names) {
+                for (int i = 0; i < header.length; i++) {
+                    if (name.equalsIgnoreCase(header[i])) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        Track toTrack(String[] fields) {
+            return Track.builder()
+                    .trackName(fields[trackName])
+                    .artistName(artistName >= 0 && fields.length > artistName ? fields[artistName] : "")
+                    .id(trackId >= 0 && fields.length > trackId ? toTrackId(fields[trackId]) : null)
+                    .build();
+        }
+
+        private static TrackId toTrackId(String value) {
+            return TrackId.isValid(value) ? TrackId.of(value) : TrackId.fromUriOrLink(value);
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package com.github.d.romanov.spotify.importer.service.parser;
 
 import com.github.d.romanov.spotify.importer.model.Track;
-import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.core.io.buffer.DataBuffer;
 import reactor.core.publisher.Flux;
 
-import java.util.Collection;
-
+/**
+ * Parsers are tried in {@link org.springframework.core.annotation.Order} order, the first applicable one is used.
+ */
 public interface FileParser {
 
-    boolean isApplicable(FilePart file);
+    /**
+     * @param prefix First bytes of the file and its metadata, must be matched without reading the content
+     */
+    boolean isApplicable(ContentPrefix prefix);
 
-    Flux<Track> parseTracks(FilePart file);
+    /**
+     * @param content Whole file content, including the bytes already seen in {@link ContentPrefix}.
+     *                Parser is responsible for releasing the buffers
+     */
+    Flux<Track> parseTracks(Flux<DataBuffer> content);
 }
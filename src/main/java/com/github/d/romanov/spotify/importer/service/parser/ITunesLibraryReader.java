@@ -0,0 +1,252 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import com.fasterxml.aalto.AsyncByteArrayFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import com.github.d.romanov.spotify.importer.model.Track;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental reader of iTunes library plist, fed with raw content chunks.
+ * <p>
+ * Library structure is {@code plist > dict > key "Tracks" > dict > (key "track id" > dict)*}, each track dict holding
+ * {@code key > value} pairs. The reader walks it with non-blocking Aalto cursor and a small state machine,
+ * returning every track as soon as its {@code dict} is closed. Everything after the tracks dict (i.e. playlists)
+ * is skipped without parsing.
+ * <p>
+ * Instances are stateful and not thread-safe, one reader per parsed content.
+ */
+class ITunesLibraryReader implements AutoCloseable {
+
+    private static final AsyncXMLInputFactory INPUT_FACTORY = new InputFactoryImpl();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    private static final int ROOT_DEPTH = 1;
+    private static final int TRACKS_DEPTH = 2;
+    private static final int TRACK_DEPTH = 3;
+
+    private enum State {
+        /**
+         * Root dict, looking for "Tracks" key
+         */
+        LIBRARY,
+        /**
+         * "Tracks" key read, expecting tracks dict
+         */
+        TRACKS_KEY,
+        /**
+         * Inside tracks dict, between tracks
+         */
+        TRACKS,
+        /**
+         * Inside track dict
+         */
+        TRACK,
+        /**
+         * Tracks dict closed, nothing more to read
+         */
+        DONE
+    }
+
+    private enum Key {
+        NAME, ARTIST, OTHER;
+
+        static Key of(CharSequence text) {
+            if ("Name".contentEquals(text)) {
+                return NAME;
+            } else if ("Artist".contentEquals(text)) {
+                return ARTIST;
+            }
+            return OTHER;
+        }
+    }
+
+    private final AsyncXMLStreamReader<AsyncByteArrayFeeder> reader = INPUT_FACTORY.createAsyncForByteArray();
+    private final StringBuilder text = new StringBuilder();
+    private byte[] chunk = new byte[0];
+
+    private State state = State.LIBRARY;
+    private int depth;
+    private boolean collectText;
+    private Key key;
+    private String trackName;
+    private String artistName;
+
+    boolean isDone() {
+        return state == State.DONE;
+    }
+
+    /**
+     * Consumes and releases the buffer.
+     *
+     * @return Tracks completed by this buffer
+     */
+    List<Track> feed(DataBuffer dataBuffer) {
+        try {
+            if (isDone()) {
+                return List.of();
+            }
+            int length = dataBuffer.readableByteCount();
+            if (chunk.length < length) {
+                chunk = new byte[length];
+            }
+            dataBuffer.read(chunk, 0, length);
+            return feed(chunk, 0, length);
+        } finally {
+            DataBufferUtils.release(dataBuffer);
+        }
+    }
+
+    /**
+     * Array must not be modified until this method returns.
+     *
+     * @return Tracks completed by this chunk
+     */
+    List<Track> feed(byte[] bytes, int offset, int length) {
+        if (isDone()) {
+            return List.of();
+        }
+        try {
+            reader.getInputFeeder().feedInput(bytes, offset, length);
+            return readAvailable();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to parse iTunes library", e);
+        }
+    }
+
+    /**
+     * @return Tracks left after the last chunk
+     */
+    List<Track> endOfInput() {
+        if (isDone()) {
+            return List.of();
+        }
+        try {
+            reader.getInputFeeder().endOfInput();
+            return readAvailable();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to parse iTunes library", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (XMLStreamException ignored) {
+            // nothing to release, reader doesn't own any input
+        }
+    }
+
+    private List<Track> readAvailable() throws XMLStreamException {
+        List<Track> tracks = new ArrayList<>();
+        while (!isDone() && reader.hasNext()) {
+            int event = reader.next();
+            switch (event) {
+                case AsyncXMLStreamReader.EVENT_INCOMPLETE -> {
+                    return tracks;
+                }
+                case XMLStreamConstants.START_ELEMENT -> onStartElement(reader.getLocalName());
+                case XMLStreamConstants.END_ELEMENT -> onEndElement(reader.getLocalName(), tracks);
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                    if (collectText) {
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                }
+                default -> {
+                    // prolog, comments and DTD are irrelevant
+                }
+            }
+        }
+        return tracks;
+    }
+
+    private void onStartElement(String name) {
+        if (state == State.TRACKS_KEY) {
+            state = "dict".equals(name) ? State.TRACKS : State.LIBRARY;
+        }
+        switch (name) {
+            case "dict", "array" -> {
+                depth++;
+                if (state == State.TRACKS && depth == TRACK_DEPTH) {
+                    state = State.TRACK;
+                    trackName = null;
+                    artistName = null;
+                }
+            }
+            case "key", "string" -> {
+                text.setLength(0);
+                collectText = isKeyOrValueOfInterest(name);
+            }
+            default -> {
+                // integer, date, true/false values are skipped
+            }
+        }
+    }
+
+    private boolean isKeyOrValueOfInterest(String name) {
+        return switch (state) {
+            case LIBRARY -> depth == ROOT_DEPTH && "key".equals(name);
+            case TRACK -> depth == TRACK_DEPTH;
+            default -> false;
+        };
+    }
+
+    private void onEndElement(String name, List<Track> tracks) {
+        switch (name) {
+            case "dict", "array" -> {
+                if (state == State.TRACK && depth == TRACK_DEPTH) {
+                    if (trackName != null) {
+                        tracks.add(Track.builder()
+                                .trackName(trackName)
+                                .artistName(artistName != null ? artistName : "")
+                                .build());
+                    }
+                    state = State.TRACKS;
+                } else if (state == State.TRACKS && depth == TRACKS_DEPTH) {
+                    state = State.DONE;
+                }
+                depth--;
+                key = null;
+            }
+            case "key" -> {
+                if (collectText) {
+                    if (state == State.LIBRARY) {
+                        key = null;
+                        if ("Tracks".contentEquals(text)) {
+                            state = State.TRACKS_KEY;
+                        }
+                    } else {
+                        key = Key.of(text);
+                    }
+                }
+                collectText = false;
+            }
+            case "string" -> {
+                if (collectText && key != null) {
+                    switch (key) {
+                        case NAME -> trackName = text.toString();
+                        case ARTIST -> artistName = text.toString();
+                        default -> {
+                            // other track attributes are not used for search
+                        }
+                    }
+                }
+                collectText = false;
+                key = null;
+            }
+            default -> key = null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import com.github.d.romanov.spotify.importer.config.props.ParserProps;
+import com.github.d.romanov.spotify.importer.model.Track;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Parser for large iTunes libraries, applicable if upload size is at least {@code parser.itunes.parallel-threshold}.
+ * <p>
+ * Upload is spooled to a temp file (unless it is already spooled by {@code UploadSpooler}), which is split
+ * into chunks of about {@code parser.itunes.chunk-size} at track boundaries
+ * ({@code </dict> <key>track id</key> <dict>} inside tracks dict). Chunks are parsed concurrently
+ * with {@link ITunesLibraryReader} on a bounded pool, and tracks are emitted in file order.
+ * Every chunk but the first is prepended with a synthetic {@code <plist><dict><key>Tracks</key><dict>} header,
+ * so the reader sees it as a regular library.
+ */
+
+@Slf4j
+@Service
+@Order(-1)
+public class ITunesXmlParallelFileParser implements FileParser, SpooledFileParser {
+
+    private static final byte[] TRACKS_HEADER = "<plist><dict><key>Tracks</key><dict>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TRACKS_KEY = "<key>Tracks</key>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DICT_START = "<dict>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DICT_END = "</dict>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_START = "<key>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_END = "</key>".getBytes(StandardCharsets.UTF_8);
+
+    private static final int READ_WINDOW = 64 * 1024;
+    /**
+     * Window is read with extra bytes, so that a boundary starting at the end of the window can be verified
+     */
+    private static final int WINDOW_OVERLAP = 256;
+
+    private final ParserProps parserProps;
+    private final Scheduler scheduler;
+
+    public ITunesXmlParallelFileParser(ParserProps parserProps) {
+        this.parserProps = parserProps;
+        this.scheduler = Schedulers.newParallel("itunes-parser", parserProps.getItunes().getParallelism());
+    }
+
+    @PreDestroy
+    public void dispose() {
+        scheduler.dispose();
+    }
+
+    @Override
+    public boolean isApplicable(ContentPrefix prefix) {
+        return ITunesXmlFileParser.isLibrary(prefix)
+                && prefix.contentLength() >= parserProps.getItunes().getParallelThreshold().toBytes();
+    }
+
+    @Override
+    public Flux<Track> parseTracks(Flux<DataBuffer> content) {
+        return Flux.using(() -> Files.createTempFile("itunes-library-", ".xml"),
+                path -> DataBufferUtils.write(content, path)
+                        .thenMany(parseTracks(path)),
+                this::delete);
+    }
+
+    @Override
+    public Flux<Track> parseTracks(Path spoolFile) {
+        return Mono.fromCallable(() -> split(spoolFile))
+                .subscribeOn(scheduler)
+                .flatMapIterable(Function.identity())
+                .flatMapSequential(range -> Mono.fromCallable(() -> parse(spoolFile, range)).subscribeOn(scheduler),
+                        parserProps.getItunes().getParallelism())
+                .concatMapIterable(Function.identity());
+    }
+
+    private List<Range> split(Path path) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunkSize = parserProps.getItunes().getChunkSize().toBytes();
+            long start = 0;
+            long tracksKey = indexOfTracksKey(channel);
+            if (tracksKey >= 0) {
+                long boundary = nextTrackBoundary(channel, tracksKey + chunkSize);
+                while (boundary >= 0) {
+                    ranges.add(new Range(start, boundary));
+                    start = boundary;
+                    boundary = nextTrackBoundary(channel, start + chunkSize);
+                }
+            }
+            ranges.add(new Range(start, size));
+            log.debug("iTunes library of {} bytes split into {} chunks", size, ranges.size());
+        }
+        return ranges;
+    }
+
+    private List<Track> parse(Path path, Range range) throws IOException {
+        List<Track> tracks = new ArrayList<>();
+        ITunesLibraryReader reader = new ITunesLibraryReader();
+        try (reader; FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (range.start() > 0) {
+                tracks.addAll(reader.feed(TRACKS_HEADER, 0, TRACKS_HEADER.length));
+            }
+            byte[] chunk = new byte[READ_WINDOW];
+            long position = range.start();
+            while (position < range.end() && !reader.isDone()) {
+                int length = read(channel, position, chunk, (int) Math.min(chunk.length, range.end() - position));
+                if (length <= 0) {
+                    break;
+                }
+                tracks.addAll(reader.feed(chunk, 0, length));
+                position += length;
+            }
+        }
+        return tracks;
+    }
+
+    private long indexOfTracksKey(FileChannel channel) throws IOException {
+        byte[] window = new byte[READ_WINDOW + WINDOW_OVERLAP];
+        for (long position = 0; position < channel.size(); position += READ_WINDOW) {
+            int length = read(channel, position, window, window.length);
+            for (int i = 0; i < Math.min(READ_WINDOW, length); i++) {
+                if (matches(window, i, length, TRACKS_KEY)) {
+                    return position + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Position of the next top level track {@code <key>} after {@code from}, or -1 if there are no more tracks
+     */
+    private long nextTrackBoundary(FileChannel channel, long from) throws IOException {
+        byte[] window = new byte[READ_WINDOW + WINDOW_OVERLAP];
+        for (long position = from; position < channel.size(); position += READ_WINDOW) {
+            int length = read(channel, position, window, window.length);
+            for (int i = 0; i < Math.min(READ_WINDOW, length); i++) {
+                if (matches(window, i, length, DICT_END)) {
+                    int key = skipWhitespace(window, i + DICT_END.length, length);
+                    if (isTrackEntry(window, key, length)) {
+                        return position + key;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Whether {@code <key>digits</key> <dict>} starts at the offset
+     */
+    private static boolean isTrackEntry(byte[] bytes, int offset, int length) {
+        if (!matches(bytes, offset, length, KEY_START)) {
+            return false;
+        }
+        int position = offset + KEY_START.length;
+        int digitsStart = position;
+        while (position < length && bytes[position] >= '0' && bytes[position] <= '9') {
+            position++;
+        }
+        if (position == digitsStart || !matches(bytes, position, length, KEY_END)) {
+            return false;
+        }
+        position = skipWhitespace(bytes, position + KEY_END.length, length);
+        return matches(bytes, position, length, DICT_START);
+    }
+
+    private static int skipWhitespace(byte[] bytes, int offset, int length) {
+        int position = offset;
+        while (position < length && (bytes[position] == ' ' || bytes[position] == '\t'
+                || bytes[position] == '\n' || bytes[position] == '\r')) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean matches(byte[] bytes, int offset, int length, byte[] pattern) {
+        if (length - offset < pattern.length) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (bytes[offset + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int read(FileChannel channel, long position, byte[] bytes, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete spooled library {}", path, e);
+        }
+    }
+
+    private record Range(long start, long end) {}
+}
@@ -0,0 +1,80 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import com.github.d.romanov.spotify.importer.config.props.ParserProps;
+import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import com.github.d.romanov.spotify.importer.service.parser.tokenizer.RecordTokenizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+/**
+ * Parser for m3u/m3u8 playlist (read as UTF-8). Each entry is a file path or URL, optionally preceded by
+ * {@code #EXTINF:duration,Artist ${delimiter} Title}. If there is no {@code #EXTINF}, file name is used as a title.
+ * Entries that are Spotify track URIs or links are not searched.
+ */
+
+@Slf4j
+@RequiredArgsConstructor
+@Service
+@Order(1)
+public class M3uFileParser implements FileParser {
+
+    private static final String HEADER = "#EXTM3U";
+    private static final String EXTINF = "#EXTINF:";
+    private static final MediaType AUDIO_MPEGURL = MediaType.parseMediaType("audio/x-mpegurl");
+    private static final MediaType APPLE_MPEGURL = MediaType.parseMediaType("application/vnd.apple.mpegurl");
+
+    private final ParserProps parserProps;
+
+    @Override
+    public boolean isApplicable(ContentPrefix prefix) {
+        return prefix.startsWith(HEADER) || prefix.hasExtension("m3u", "m3u8")
+                || prefix.isContentType(AUDIO_MPEGURL) || prefix.isContentType(APPLE_MPEGURL);
+    }
+
+    @Override
+    public Flux<Track> parseTracks(Flux<DataBuffer> content) {
+        return Flux.defer(() -> {
+            String[] title = new String[1];
+            return RecordTokenizer.tokenize(content, () -> new RecordTokenizer(null))
+                    .map(fields -> fields[0])
+                    .handle((line, sink) -> {
+                        if (line.startsWith(EXTINF)) {
+                            int comma = line.indexOf(',');
+                            title[0] = comma < 0 ? null : line.substring(comma + 1).trim();
+                        } else if (!line.startsWith("#")) {
+                            TrackId id = TrackId.fromUriOrLink(line);
+                            boolean hasTitle = title[0] != null && !title[0].isEmpty();
+                            if (id != null && !hasTitle) {
+                                sink.next(Track.ofLink(line, id));
+                            } else {
+                                Track track = toTrack(hasTitle ? title[0] : FilenameUtils.getBaseName(line));
+                                sink.next(track.withId(id));
+                            }
+                            title[0] = null;
+                        }
+                    });
+        });
+    }
+
+    private Track toTrack(String title) {
+        String delimiter = parserProps.getM3u().getDelimiter();
+        int index = title.indexOf(delimiter);
+        if (index < 0) {
+            return Track.builder()
+                    .trackName(title)
+                    .artistName("")
+                    .build();
+        }
+        return Track.builder()
+                .trackName(title.substring(index + delimiter.length()).trim())
+                .artistName(title.substring(0, index).trim())
+                .build();
+    }
+}
@@ -1,44 +1,93 @@
 package com.github.d.romanov.spotify.importer.service.parser;
 
+import com.github.d.romanov.spotify.importer.metrics.ImportMetrics;
 import com.github.d.romanov.spotify.importer.model.SearchResult;
 import com.github.d.romanov.spotify.importer.model.Track;
-import com.github.d.romanov.spotify.importer.utils.TrackUtils;
+import com.github.d.romanov.spotify.importer.model.UploadedFile;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ParserService {
 
+    /**
+     * Number of bytes peeked to choose the parser
+     */
+    public static final int PREFIX_LENGTH = 4 * 1024;
+
     private final List<FileParser> parsers;
+    private final ImportMetrics importMetrics;
 
     /**
      * Parses the playlist file with corresponding parser.
-     * Throws {@link IllegalStateException}, if there are no applicable parsers for supplied file.
+     * Emits {@link IllegalStateException}, if there are no applicable parsers for supplied file.
+     * <p>
+     * File content is read once: first buffers up to {@link #PREFIX_LENGTH} are held back to match parser
+     * signatures, then replayed to the chosen parser followed by the rest of the content.
+     * <p>
+     * Artist names are deduplicated per import, so the same artist of thousands of tracks is held in memory once.
+     *
+     * Spooled file is passed directly to {@link SpooledFileParser}s.
      *
      * @param file Playlist file
      * @return {@link SearchResult} containing list of track ids found in Spotify, and list of not found tracks
      */
-    public Flux<Track> parseTracks(FilePart file) {
+    public Flux<Track> parseTracks(UploadedFile file) {
         log.debug("Tracks parsing started");
-        FileParser parser = parsers.stream()
-                .filter(p -> p.isApplicable(file))
-                .findAny()
-                .orElseThrow(() -> new IllegalStateException("No parsers found for media type " + file.headers().getContentType()));
+        Flux<Track> tracks = Flux.defer(() -> {
+                    AtomicInteger prefixLength = new AtomicInteger();
+                    return file.content()
+                            .bufferUntil(dataBuffer ->
+                                    prefixLength.addAndGet(dataBuffer.readableByteCount()) >= PREFIX_LENGTH)
+                            .switchOnFirst((signal, chunks) -> {
+                                if (!signal.hasValue()) {
+                                    return chunks.thenMany(Flux.<Track>empty());
+                                }
+                                List<DataBuffer> prefixBuffers = signal.get();
+                                ContentPrefix prefix = ContentPrefix.of(file.filename(), file.contentType(), file.size(),
+                                        prefixBuffers, PREFIX_LENGTH);
+                                return parsers.stream()
+                                        .filter(p -> p.isApplicable(prefix))
+                                        .findFirst()
+                                        .map(parser -> {
+                                            String parserName = parser.getClass().getSimpleName();
+                                            log.debug("Parsing {} with {}", file.filename(), parserName);
+                                            if (file.isSpooled() && parser instanceof SpooledFileParser spooledFileParser) {
+                                                prefixBuffers.forEach(DataBufferUtils::release);
+                                                return importMetrics.timeParse(parserName,
+                                                        spooledFileParser.parseTracks(file.spoolFile()));
+                                            }
+                                            return importMetrics.timeParse(parserName,
+                                                    parser.parseTracks(chunks.concatMapIterable(Function.identity())));
+                                        })
+                                        .orElseGet(() -> {
+                                            prefixBuffers.forEach(DataBufferUtils::release);
+                                            return Flux.error(new IllegalStateException(
+                                                    "No parsers found for media type " + prefix.contentType()));
+                                        });
+                            });
+                })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
 
-        return parser.parseTracks(file)
-                .transformDeferred(trackFlux -> {
-                    log.debug("Tracks parsing complete");
-                    return trackFlux;
+        return Flux.defer(() -> {
+                    Map<String, String> artistNames = new HashMap<>();
+                    return tracks.map(track -> track.withArtistName(
+                            artistNames.computeIfAbsent(track.artistName(), Function.identity())));
                 })
-                .switchIfEmpty(Mono.error(new IllegalStateException("No tracks were found in supplied playlist")))
-                .doOnNext(TrackUtils::fixFeatTags);
+                .doOnComplete(() -> log.debug("Tracks parsing complete"))
+                .switchIfEmpty(Mono.error(new IllegalStateException("No tracks were found in supplied playlist")));
     }
 }
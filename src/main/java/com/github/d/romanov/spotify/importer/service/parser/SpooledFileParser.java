@@ -0,0 +1,17 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import com.github.d.romanov.spotify.importer.model.Track;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+
+/**
+ * Implemented by {@link FileParser}s that read spooled upload directly from disk, instead of content buffers.
+ */
+public interface SpooledFileParser {
+
+    /**
+     * @param spoolFile Spooled upload, owned and deleted by the caller
+     */
+    Flux<Track> parseTracks(Path spoolFile);
+}
@@ -2,54 +2,54 @@ package com.github.d.romanov.spotify.importer.service.parser;
 
 import com.github.d.romanov.spotify.importer.config.props.ParserProps;
 import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import com.github.d.romanov.spotify.importer.service.parser.tokenizer.RecordTokenizer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
-import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.stream.Collectors;
-
 /**
- * Parser for file txt file, one track per line in format: {@code trackName ${delimiter} artistName}
+ * Parser for file txt file, one track per line in format: {@code trackName ${delimiter} artistName}.
+ * Line may also be a track URI or link, i.e. {@code spotify:track:id} or {@code https://open.spotify.com/track/id}.
+ * <p>
+ * Used as a fallback for any plain text file not matched by more specific parsers.
+ * Lines are tokenized as upload chunks arrive, so tracks are emitted before the whole file is read.
  */
 
 @Slf4j
 @RequiredArgsConstructor
 @Service
+@Order
 public class TxtFileParser implements FileParser {
 
     private final ParserProps parserProps;
 
     @Override
-    public boolean isApplicable(FilePart file) {
-        return MediaType.TEXT_PLAIN.equals(file.headers().getContentType());
+    public boolean isApplicable(ContentPrefix prefix) {
+        return prefix.isContentType(MediaType.TEXT_PLAIN) || prefix.hasExtension("txt");
     }
 
     @Override
-    public Flux<Track> parseTracks(FilePart file) {
-        return DataBufferUtils.join(file.content())
-                .flatMapMany(dataBuffer -> {
-                    try (var inputStream = dataBuffer.asInputStream(true);
-                         var streamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-                         var bufferedReader = new BufferedReader(streamReader)) {
-
-                        return Flux.fromIterable(bufferedReader.lines()
-                                .map(line -> line.split(parserProps.getTxt().getDelimiter()))
-                                .map(details -> Track.builder()
-                                        .trackName(details[0].trim())
-                                        .artistName(details.length > 1 ? details[1].trim() : "")
-                                        .build())
-                                .collect(Collectors.toList()));
-                    } catch (IOException e) {
-                        return Flux.error(e);
+    public Flux<Track> parseTracks(Flux<DataBuffer> content) {
+        String delimiter = parserProps.getTxt().getDelimiter();
+        return RecordTokenizer.tokenize(content, () -> new RecordTokenizer(delimiter))
+                .map(details -> {
+                    if (details[0].contains("spotify")) {
+                        //links may contain the delimiter, i.e. open.spotify.com/intl-de/track/...
+                        String line = String.join(delimiter, details);
+                        TrackId id = TrackId.fromUriOrLink(line);
+                        if (id != null) {
+                            return Track.ofLink(line, id);
+                        }
                     }
+                    return Track.builder()
+                            .trackName(details[0])
+                            .artistName(details.length > 1 ? details[1] : "")
+                            .build();
                 });
     }
 }
@@ -0,0 +1,236 @@
+package com.github.d.romanov.spotify.importer.service.parser.tokenizer;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Splits uploaded content into records (lines) and fields directly on {@link DataBuffer} bytes.
+ * Shared by all line based parsers, so they have the same throughput and memory profile.
+ * <p>
+ * Fields are separated by a literal delimiter. If quote character is set, fields may be quoted CSV-style:
+ * delimiters and line feeds inside quotes are kept, and doubled quote stands for a single one.
+ * <p>
+ * Bytes of an unfinished line are carried over to the next buffer and decoded only when the whole field is available,
+ * so lines and multibyte UTF-8 sequences cut by a buffer boundary are handled without joining the upload.
+ * Each buffer is released as soon as it is copied, and records are emitted on demand,
+ * so the heap holds at most one buffer and one line per upload.
+ * <p>
+ * Instances are stateful, use {@link #tokenize(Flux, Supplier)} to get a fresh one per subscription.
+ */
+public class RecordTokenizer {
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final byte[] delimiter;
+    private final boolean quoted;
+    private final byte quote;
+    private byte[] chunk = new byte[0];
+    private byte[] line = new byte[256];
+    private byte[] field = new byte[0];
+    private int lineLength;
+    private boolean firstLine = true;
+    private boolean insideQuotes;
+
+    /**
+     * @param delimiter Literal field delimiter, {@code null} or empty to emit whole lines as single field records
+     */
+    public RecordTokenizer(String delimiter) {
+        this(delimiter, null);
+    }
+
+    /**
+     * @param delimiter Literal field delimiter, {@code null} or empty to emit whole lines as single field records
+     * @param quote     Quote character (ASCII), {@code null} if fields are never quoted
+     */
+    public RecordTokenizer(String delimiter, Character quote) {
+        Assert.isTrue(quote == null || quote < 0x80, "Quote must be ASCII character");
+        this.delimiter = delimiter == null ? new byte[0] : delimiter.getBytes(StandardCharsets.UTF_8);
+        this.quoted = quote != null;
+        this.quote = quoted ? (byte) quote.charValue() : 0;
+    }
+
+    /**
+     * @param content           Raw content, buffers are released by the tokenizer
+     * @param tokenizerSupplier Creates tokenizer for each subscription
+     * @return Non-blank records, each unquoted field trimmed
+     */
+    public static Flux<String[]> tokenize(Flux<DataBuffer> content, Supplier<RecordTokenizer> tokenizerSupplier) {
+        return Flux.defer(() -> {
+            RecordTokenizer tokenizer = tokenizerSupplier.get();
+            return content.concatMapIterable(tokenizer::feed)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(tokenizer.finish())));
+        }).doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * Consumes and releases the buffer.
+     *
+     * @return Records completed by this buffer
+     */
+    public List<String[]> feed(DataBuffer dataBuffer) {
+        int length = dataBuffer.readableByteCount();
+        try {
+            if (chunk.length < length) {
+                chunk = new byte[length];
+            }
+            dataBuffer.read(chunk, 0, length);
+        } finally {
+            DataBufferUtils.release(dataBuffer);
+        }
+
+        List<String[]> records = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (quoted && chunk[i] == quote) {
+                insideQuotes = !insideQuotes;
+            } else if (chunk[i] == LF && !insideQuotes) {
+                append(chunk, start, i - start);
+                addRecord(records);
+                start = i + 1;
+            }
+        }
+        append(chunk, start, length - start);
+        return records;
+    }
+
+    /**
+     * @return Last record, if content doesn't end with line feed
+     */
+    public List<String[]> finish() {
+        List<String[]> records = new ArrayList<>(1);
+        addRecord(records);
+        return records;
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(bytes, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void addRecord(List<String[]> records) {
+        int start = 0;
+        int end = lineLength;
+        if (firstLine && startsWith(line, 0, end, UTF8_BOM)) {
+            start = UTF8_BOM.length;
+        }
+        if (end > start && line[end - 1] == CR) {
+            end--;
+        }
+        lineLength = 0;
+        firstLine = false;
+        insideQuotes = false;
+
+        if (!isBlank(start, end)) {
+            records.add(split(start, end));
+        }
+    }
+
+    private String[] split(int start, int end) {
+        if (delimiter.length == 0) {
+            return new String[]{decode(start, end)};
+        }
+
+        List<String> fields = new ArrayList<>(8);
+        int position = start;
+        while (true) {
+            int fieldEnd = quoted ? readQuotedField(position, end, fields) : -1;
+            if (fieldEnd < 0) {
+                fieldEnd = indexOfDelimiter(position, end);
+                fields.add(decode(position, fieldEnd));
+            }
+            if (fieldEnd >= end) {
+                return fields.toArray(String[]::new);
+            }
+            position = fieldEnd + delimiter.length;
+        }
+    }
+
+    /**
+     * @return Position of delimiter after the quoted field, or -1 if the field is not quoted
+     */
+    private int readQuotedField(int start, int end, List<String> fields) {
+        int position = start;
+        while (position < end && isWhitespace(line[position])) {
+            position++;
+        }
+        if (position == end || line[position] != quote) {
+            return -1;
+        }
+
+        if (field.length < end - position) {
+            field = new byte[end - position];
+        }
+        int fieldLength = 0;
+        position++;
+        while (position < end) {
+            if (line[position] == quote) {
+                if (position + 1 < end && line[position + 1] == quote) {
+                    position++;
+                } else {
+                    position++;
+                    break;
+                }
+            }
+            field[fieldLength++] = line[position++];
+        }
+        fields.add(new String(field, 0, fieldLength, StandardCharsets.UTF_8));
+        return indexOfDelimiter(position, end);
+    }
+
+    private int indexOfDelimiter(int start, int end) {
+        for (int i = start; i <= end - delimiter.length; i++) {
+            if (startsWith(line, i, end, delimiter)) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private String decode(int start, int end) {
+        while (start < end && isWhitespace(line[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(line[end - 1])) {
+            end--;
+        }
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isWhitespace(line[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == CR;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, int end, byte[] prefix) {
+        if (end - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.d.romanov.spotify.importer.service.upload;
+
+import com.github.d.romanov.spotify.importer.config.props.UploadProps;
+import com.github.d.romanov.spotify.importer.model.UploadedFile;
+import com.github.d.romanov.spotify.importer.model.dto.UploadRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Large multipart files are stored on disk by multipart reader (see {@code spring.webflux.multipart}), but their
+ * content is still read into heap buffers, and only until the request completes. Uploads are transferred
+ * to a spool file instead, and parsed from memory mapped chunks of it, so heap usage doesn't grow with upload size
+ * and the import job can outlive the upload request.
+ * <p>
+ * Spool file lives until {@link #release(UploadedFile)} is called at the end of the import.
+ */
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UploadSpooler {
+
+    private final UploadProps uploadProps;
+
+    public Mono<UploadedFile> spool(UploadRequest upload) {
+        FilePart part = upload.file();
+        return Mono.fromCallable(() -> {
+                    Path directory = Files.createDirectories(Path.of(uploadProps.getSpoolDirectory()));
+                    return Files.createTempFile(directory, "upload-", "." + FilenameUtils.getExtension(part.filename()));
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(spoolFile -> part.transferTo(spoolFile)
+                        .then(Mono.fromCallable(() -> Files.size(spoolFile)).subscribeOn(Schedulers.boundedElastic()))
+                        .map(size -> {
+                            log.debug("Spooled {} of {} bytes to {}", part.filename(), size, spoolFile);
+                            //part is not kept, it holds the request it was uploaded with
+                            return new UploadedFile(part.filename(), part.headers().getContentType(), size,
+                                    spoolFile, mappedContent(spoolFile));
+                        })
+                        .onErrorResume(throwable -> delete(spoolFile).then(Mono.error(throwable)))
+                        .doOnCancel(() -> delete(spoolFile).subscribe()));
+    }
+
+    public Mono<Void> release(UploadedFile file) {
+        return file.isSpooled() ? delete(file.spoolFile()) : Mono.empty();
+    }
+
+    private Flux<DataBuffer> mappedContent(Path spoolFile) {
+        long chunkSize = uploadProps.getReadChunkSize().toBytes();
+        return Flux.using(() -> FileChannel.open(spoolFile, StandardOpenOption.READ),
+                        channel -> Flux.<DataBuffer, Long>generate(() -> 0L, (position, sink) -> {
+                            try {
+                                long length = Math.min(chunkSize, channel.size() - position);
+                                if (length <= 0) {
+                                    sink.complete();
+                                } else {
+                                    sink.next(DefaultDataBufferFactory.sharedInstance.wrap(
+                                            channel.map(FileChannel.MapMode.READ_ONLY, position, length)));
+                                }
+                                return position + length;
+                            } catch (IOException e) {
+                                sink.error(e);
+                                return position;
+                            }
+                        }),
+                        this::closeQuietly)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Void> delete(Path spoolFile) {
+        return Mono.fromRunnable(() -> {
+                    try {
+                        Files.deleteIfExists(spoolFile);
+                    } catch (IOException e) {
+                        log.warn("Failed to delete spool file {}", spoolFile, e);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close spool file", e);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.github.d.romanov.spotify.importer.utils;
+
+import com.github.d.romanov.spotify.importer.model.Track;
+import lombok.experimental.UtilityClass;
+
+import java.text.Normalizer;
+
+/**
+ * Normalizes track and artist names for search, in a single pass over each name into a thread local buffer.
+ * <p>
+ * Dropped from both names:
+ * <ul>
+ *     <li>featuring artists: everything after {@code feat./ft./featuring}, or the whole bracket holding them</li>
+ *     <li>noise suffixes after {@code " - "}, i.e. {@code - Remastered 2011}, {@code - Live at Wembley}</li>
+ *     <li>noise brackets, i.e. {@code (Live)}, {@code (Deluxe Edition)}, and every {@code [...]} or {@code {...}}</li>
+ *     <li>noise is a whole bracket or suffix matching a known phrase, not any word starting like a noise word</li>
+ * </ul>
+ * Other parentheses are kept without the brackets, and whitespace is collapsed.
+ * Empirically, Spotify search produces more accurate results without those.
+ * <p>
+ * {@link #query(Track)} keeps case and diacritics, {@link #key(Track)} is also lower cased and diacritics folded,
+ * so spelling variants of the same song share a cache entry. {@link #keyHash(Track)} doesn't allocate at all.
+ */
+
+@UtilityClass
+public class QueryNormalizer {
+
+    /**
+     * Noise brackets and suffixes made of a single word, i.e. {@code (Live)}, {@code - Remastered}
+     */
+    private static final String[] SINGLE_NOISE = {"live", "mono", "stereo", "demo", "explicit", "bonus", "deluxe",
+            "remaster", "remastered", "edit", "version"};
+    /**
+     * Last words of noise phrases, i.e. {@code (Radio Edit)}, {@code - Single Version}, {@code (Deluxe Edition)}
+     */
+    private static final String[] LAST_NOISE = {"edit", "version", "edition"};
+    /**
+     * Second words of live recording phrases, i.e. {@code - Live at Wembley}, {@code (Live from Paris)}
+     */
+    private static final String[] LIVE_PLACE = {"at", "from", "in"};
+    private static final String[] REMASTER = {"remaster", "remastered"};
+    /**
+     * Words allowed in remaster phrases besides years, i.e. {@code (2009 Digital Remaster)}
+     */
+    private static final String[] REMASTER_EXTRA = {"digital", "version", "edition"};
+    private static final String[] FEAT = {"feat.", "feat", "ft.", "ft", "featuring"};
+
+    private static final char FOLD_FROM = 'À';
+    private static final char[] FOLD = new char['ɐ' - FOLD_FROM];
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[256]);
+
+    static {
+        for (int i = 0; i < FOLD.length; i++) {
+            char c = (char) (FOLD_FROM + i);
+            char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+            FOLD[i] = base < 0x80 ? base : c;
+        }
+        fold('ø', 'o');
+        fold('Ø', 'O');
+        fold('đ', 'd');
+        fold('Đ', 'D');
+        fold('ł', 'l');
+        fold('Ł', 'L');
+    }
+
+    /**
+     * @return Search query, "track artist"
+     */
+    public static String query(Track track) {
+        char[] buffer = buffer(track);
+        return new String(buffer, 0, normalize(track, buffer, false));
+    }
+
+    /**
+     * @return Search cache key, same for queries differing only in case, diacritics and noise
+     */
+    public static String key(Track track) {
+        char[] buffer = buffer(track);
+        return new String(buffer, 0, normalize(track, buffer, true));
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of {@link #key(Track)}, for compact sets of seen tracks
+     */
+    public static long keyHash(Track track) {
+        char[] buffer = buffer(track);
+        int length = normalize(track, buffer, true);
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ buffer[i]) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static char[] buffer(Track track) {
+        int capacity = length(track.trackName()) + length(track.artistName()) + 1;
+        char[] buffer = BUFFER.get();
+        if (buffer.length < capacity) {
+            buffer = new char[Math.max(capacity, buffer.length * 2)];
+            BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static int normalize(Track track, char[] out, boolean key) {
+        int length = appendSpace(out, 0, append(track.trackName(), out, 0, key));
+        length = append(track.artistName(), out, length, key);
+        return length > 0 && out[length - 1] == ' ' ? length - 1 : length;
+    }
+
+    /**
+     * @return New length of output, possibly with a trailing space
+     */
+    private static int append(String name, char[] out, int offset, boolean key) {
+        if (name == null) {
+            return offset;
+        }
+        int length = offset;
+        int n = name.length();
+        int i = 0;
+        while (i < n) {
+            char c = name.charAt(i);
+            if (c == '(' || c == '[' || c == '{') {
+                int close = indexOfClose(name, i + 1, c == '(' ? ')' : c == '[' ? ']' : '}');
+                i = c != '(' || isNoise(name, i + 1, close) ? close + 1 : i + 1;
+                length = appendSpace(out, offset, length);
+            } else if (c == ')' || c == ']' || c == '}' || Character.isWhitespace(c)) {
+                int next = skipWhitespace(name, i + 1);
+                if (Character.isWhitespace(c) && next + 1 < n && isDash(name.charAt(next))
+                        && Character.isWhitespace(name.charAt(next + 1)) && isNoise(name, next + 1, n)) {
+                    break;
+                }
+                if (startsWithFeat(name, next)) {
+                    break;
+                }
+                length = appendSpace(out, offset, length);
+                i = next;
+            } else {
+                if (i == 0 && startsWithFeat(name, 0)) {
+                    break;
+                }
+                out[length++] = key ? toKeyChar(c) : c;
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isDash(char c) {
+        return c == '-' || c == '–' || c == '—';
+    }
+
+    private static int appendSpace(char[] out, int offset, int length) {
+        if (length > offset && out[length - 1] != ' ') {
+            out[length++] = ' ';
+        }
+        return length;
+    }
+
+    private static boolean startsWithFeat(String s, int from) {
+        for (String feat : FEAT) {
+            int end = from + feat.length();
+            if (matchesWord(s, from, s.length(), feat)
+                    && (end == s.length() || Character.isWhitespace(s.charAt(end)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches whole words and known phrases only, so that titles merely containing a noise word, like
+     * {@code (Live Forever Mix)} or {@code (Edith's Song)}, are kept
+     *
+     * @return Whether region is featuring artists, a single noise word or a noise phrase
+     */
+    private static boolean isNoise(String s, int from, int to) {
+        if (startsWithFeat(s, skipWhitespace(s, from))) {
+            return true;
+        }
+        int words = 0;
+        int firstStart = 0;
+        int firstEnd = 0;
+        int secondStart = 0;
+        int secondEnd = 0;
+        int lastStart = 0;
+        int lastEnd = 0;
+        boolean hasRemaster = false;
+        boolean isRemasterPhrase = true;
+        int i = from;
+        while (i < to) {
+            if (!isWordChar(s.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < to && isWordChar(s.charAt(i))) {
+                i++;
+            }
+            words++;
+            if (words == 1) {
+                firstStart = start;
+                firstEnd = i;
+            } else if (words == 2) {
+                secondStart = start;
+                secondEnd = i;
+            }
+            lastStart = start;
+            lastEnd = i;
+            if (isAnyWord(s, start, i, REMASTER)) {
+                hasRemaster = true;
+            } else if (!isNumber(s, start, i) && !isAnyWord(s, start, i, REMASTER_EXTRA)) {
+                isRemasterPhrase = false;
+            }
+        }
+        if (words == 0) {
+            return false;
+        }
+        return words == 1 && isAnyWord(s, firstStart, firstEnd, SINGLE_NOISE)
+                || words > 1 && isAnyWord(s, lastStart, lastEnd, LAST_NOISE)
+                || hasRemaster && isRemasterPhrase
+                || words > 2 && isWord(s, firstStart, firstEnd, "live") && isAnyWord(s, secondStart, secondEnd, LIVE_PLACE)
+                || words == 2 && isWord(s, firstStart, firstEnd, "bonus") && isWord(s, lastStart, lastEnd, "track");
+    }
+
+    /**
+     * Apostrophe is a part of the word, so that {@code Edith's} isn't read as {@code Edith}
+     */
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '\'' || c == '’';
+    }
+
+    private static boolean isNumber(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAnyWord(String s, int from, int to, String[] words) {
+        for (String word : words) {
+            if (isWord(s, from, to, word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param word Lower case ASCII word
+     * @return Whether region is exactly the word, case-insensitive
+     */
+    private static boolean isWord(String s, int from, int to, String word) {
+        return to - from == word.length() && matchesWord(s, from, to, word);
+    }
+
+    /**
+     * @param word Lower case ASCII word
+     * @return Whether region starts with the word, case-insensitive
+     */
+    private static boolean matchesWord(String s, int from, int to, String word) {
+        if (to - from < word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (toKeyChar(s.charAt(from + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOfClose(String s, int from, char close) {
+        int index = s.indexOf(close, from);
+        return index < 0 ? s.length() : index;
+    }
+
+    private static int skipWhitespace(String s, int from) {
+        int i = from;
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    private static char toKeyChar(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return fold(Character.toLowerCase(c));
+    }
+
+    private static char fold(char c) {
+        return c >= FOLD_FROM && c - FOLD_FROM < FOLD.length ? FOLD[c - FOLD_FROM] : c;
+    }
+
+    private static void fold(char c, char base) {
+        FOLD[c - FOLD_FROM] = base;
+    }
+}
@@ -16,4 +16,13 @@ public class TokenUtils {
                 .map(Authentication::getPrincipal)
                 .map(OAuth2User.class::cast);
     }
+
+    /**
+     * @return Name of authenticated principal (Spotify user id), empty if not authenticated
+     */
+    public static Mono<String> getPrincipalName() {
+        return ReactiveSecurityContextHolder.getContext()
+                .mapNotNull(SecurityContext::getAuthentication)
+                .map(Authentication::getName);
+    }
 }
@@ -0,0 +1,101 @@
+package com.github.d.romanov.spotify.importer.utils;
+
+import com.github.d.romanov.spotify.importer.model.TrackId;
+
+/**
+ * Open addressing set of {@link TrackId}s, stored unboxed in parallel arrays (21 bytes per slot)
+ * instead of a {@code HashSet} node, record and two longs per id. Not thread-safe.
+ */
+public class TrackIdSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] highs;
+    private long[] lows;
+    private int[] tails;
+    private boolean[] used;
+    private int size;
+
+    public TrackIdSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public TrackIdSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * @return {@code true} if the id was not in the set
+     */
+    public boolean add(TrackId id) {
+        if (2 * (size + 1) > used.length) {
+            resize(used.length * 2);
+        }
+        int i = indexOf(id.high(), id.low(), id.tail());
+        if (used[i]) {
+            return false;
+        }
+        put(i, id.high(), id.low(), id.tail());
+        size++;
+        return true;
+    }
+
+    public boolean contains(TrackId id) {
+        return used[indexOf(id.high(), id.low(), id.tail())];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Slot holding the id, or the empty slot where it should be put
+     */
+    private int indexOf(long high, long low, int tail) {
+        int mask = used.length - 1;
+        int i = hash(high, low, tail) & mask;
+        while (used[i] && !(highs[i] == high && lows[i] == low && tails[i] == tail)) {
+            i = i + 1 & mask;
+        }
+        return i;
+    }
+
+    private void put(int i, long high, long low, int tail) {
+        highs[i] = high;
+        lows[i] = low;
+        tails[i] = tail;
+        used[i] = true;
+    }
+
+    private void resize(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        int[] oldTails = tails;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                put(indexOf(oldHighs[i], oldLows[i], oldTails[i]), oldHighs[i], oldLows[i], oldTails[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        tails = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long high, long low, int tail) {
+        return LongHashSet.mix(high * 31 + low ^ tail);
+    }
+}
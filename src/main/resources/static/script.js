@@ -40,4 +40,20 @@ document.upload.addEventListener("submit", function() {
         <span class="spinner-border text-primary" role="status"></span>
         <span class="text-gray-800 fs-6 fw-semibold mt-5">Loading...</span>
     `;
-});
\ No newline at end of file
+});
+
+const jobProgress = document.getElementById("jobProgress");
+
+if (jobProgress) {
+    const events = new EventSource("/jobs/" + jobProgress.dataset.jobId + "/events");
+    events.addEventListener("progress", function(event) {
+        const status = JSON.parse(event.data);
+        jobProgress.querySelectorAll("[data-field]").forEach(function(field) {
+            field.textContent = status[field.dataset.field];
+        });
+        if (status.finished) {
+            events.close();
+            window.location.reload();
+        }
+    });
+}
@@ -0,0 +1,106 @@
+package com.github.d.romanov.spotify.importer.client.auth;
+
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingAuthorizedClientManagerTest {
+
+    private static final String REGISTRATION_ID = "spotify";
+    private static final ClientRegistration REGISTRATION = ClientRegistration.withRegistrationId(REGISTRATION_ID)
+            .clientId("client")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+            .authorizationUri("https://accounts.spotify.com/authorize")
+            .tokenUri("https://accounts.spotify.com/api/token")
+            .build();
+
+    private final OAuth2AuthenticationToken user = authentication("user");
+    private final AtomicReference<OAuth2AuthorizedClient> saved = new AtomicReference<>(client("first"));
+    private final CachingAuthorizedClientManager manager = new CachingAuthorizedClientManager(
+            request -> Mono.justOrEmpty(saved.get()), tokenProps());
+
+    @Test
+    void servesCachedClientUntilEvicted() {
+        assertThat(token(user)).isEqualTo("first");
+
+        //new login saved another client
+        saved.set(client("second"));
+        assertThat(token(user)).isEqualTo("first");
+
+        manager.evict(user);
+        assertThat(token(user)).isEqualTo("second");
+    }
+
+    @Test
+    void evictsOnlyGivenUser() {
+        OAuth2AuthenticationToken other = authentication("other");
+        assertThat(token(user)).isEqualTo("first");
+        assertThat(token(other)).isEqualTo("first");
+        saved.set(client("second"));
+
+        manager.evict(other);
+
+        assertThat(token(user)).isEqualTo("first");
+        assertThat(token(other)).isEqualTo("second");
+    }
+
+    @Test
+    void servesNothingAfterLogout() {
+        assertThat(token(user)).isEqualTo("first");
+
+        saved.set(null);
+        manager.evict(user);
+
+        assertThat(manager.authorize(request(user)).block()).isNull();
+    }
+
+    private String token(OAuth2AuthenticationToken authentication) {
+        return manager.authorize(request(authentication))
+                .map(client -> client.getAccessToken().getTokenValue())
+                .block();
+    }
+
+    private static OAuth2AuthorizeRequest request(OAuth2AuthenticationToken authentication) {
+        return OAuth2AuthorizeRequest.withClientRegistrationId(REGISTRATION_ID)
+                .principal(authentication)
+                .build();
+    }
+
+    private static OAuth2AuthenticationToken authentication(String name) {
+        DefaultOAuth2User user = new DefaultOAuth2User(AuthorityUtils.createAuthorityList("ROLE_USER"),
+                Map.of("id", name), "id");
+        return new OAuth2AuthenticationToken(user, user.getAuthorities(), REGISTRATION_ID);
+    }
+
+    private static OAuth2AuthorizedClient client(String token) {
+        Instant now = Instant.now();
+        return new OAuth2AuthorizedClient(REGISTRATION, "user", new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, token, now, now.plus(Duration.ofHours(1))));
+    }
+
+    private static SpotifyProps.Token tokenProps() {
+        SpotifyProps.Token token = new SpotifyProps.Token();
+        token.setRefreshAhead(Duration.ofMinutes(5));
+        token.setMinValidity(Duration.ofSeconds(30));
+        token.setRetryInterval(Duration.ofSeconds(10));
+        token.setMaxSize(100);
+        token.setIdleTtl(Duration.ofHours(1));
+        return token;
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.d.romanov.spotify.importer.client.cache;
+
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.PublisherProbe;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InFlightSearchesTest {
+
+    private static final String KEY = "artist track";
+    private static final TrackId ID = TrackId.of("4uLU6hMCjMI75M1A2tKUQC");
+
+    private final InFlightSearches inFlightSearches = new InFlightSearches();
+
+    @Test
+    void coalescesSearchesOfTheSameKey() {
+        Sinks.One<TrackId> result = Sinks.one();
+        PublisherProbe<TrackId> search = PublisherProbe.of(result.asMono());
+        AtomicReference<TrackId> leader = new AtomicReference<>();
+        AtomicReference<TrackId> follower = new AtomicReference<>();
+
+        inFlightSearches.search(KEY, search::mono).subscribe(leader::set);
+        inFlightSearches.search(KEY, search::mono).subscribe(follower::set);
+        result.tryEmitValue(ID);
+
+        assertThat(search.subscribeCount()).isEqualTo(1);
+        assertThat(leader).hasValue(ID);
+        assertThat(follower).hasValue(ID);
+        assertThat(inFlightSearches.getCoalescedCount()).isEqualTo(1);
+        assertThat(inFlightSearches.getInFlightCount()).isZero();
+    }
+
+    @Test
+    void keepsSearchWhenLeaderCancels() {
+        Sinks.One<TrackId> result = Sinks.one();
+        PublisherProbe<TrackId> search = PublisherProbe.of(result.asMono());
+
+        Disposable leader = inFlightSearches.search(KEY, search::mono).subscribe();
+        StepVerifier.create(inFlightSearches.search(KEY, search::mono))
+                .then(leader::dispose)
+                .then(() -> assertThat(search.wasCancelled()).isFalse())
+                .then(() -> result.tryEmitValue(ID))
+                .expectNext(ID)
+                .verifyComplete();
+    }
+
+    @Test
+    void disposesSearchWhenLastSubscriberCancels() {
+        PublisherProbe<TrackId> search = PublisherProbe.of(Sinks.<TrackId>one().asMono());
+
+        Disposable leader = inFlightSearches.search(KEY, search::mono).subscribe();
+        Disposable follower = inFlightSearches.search(KEY, search::mono).subscribe();
+        leader.dispose();
+        follower.dispose();
+
+        assertThat(search.wasCancelled()).isTrue();
+        assertThat(inFlightSearches.getInFlightCount()).isZero();
+
+        //next search starts a new flight instead of joining the disposed one
+        inFlightSearches.search(KEY, search::mono).subscribe();
+        assertThat(search.subscribeCount()).isEqualTo(2);
+        assertThat(inFlightSearches.getSearchCount()).isEqualTo(2);
+    }
+}
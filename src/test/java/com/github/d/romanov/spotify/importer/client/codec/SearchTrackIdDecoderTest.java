@@ -0,0 +1,61 @@
+package com.github.d.romanov.spotify.importer.client.codec;
+
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link SearchTrackIdDecoder} on search responses in Spotify API shape ({@code src/test/resources/spotify}),
+ * split into buffers of different sizes as they arrive from the network
+ */
+class SearchTrackIdDecoderTest {
+
+    private static final SearchTrackIdDecoder DECODER = new SearchTrackIdDecoder();
+    private static final ResolvableType TRACK_ID_TYPE = ResolvableType.forClass(TrackId.class);
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1024, 65536})
+    void decodesIdOfFirstTrack(int chunkSize) throws IOException {
+        StepVerifier.create(decode("search-found.json", chunkSize))
+                .expectNext(TrackId.of("3z8h0TU7ReDPLIbEnYhWZb"))
+                .verifyComplete();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1024})
+    void decodesEmptyItemsToEmpty(int chunkSize) throws IOException {
+        StepVerifier.create(decode("search-not-found.json", chunkSize))
+                .verifyComplete();
+    }
+
+    private static Mono<TrackId> decode(String fixture, int chunkSize) throws IOException {
+        return DECODER.decodeToMono(chunks(fixture, chunkSize), TRACK_ID_TYPE, MediaType.APPLICATION_JSON, Map.of());
+    }
+
+    private static Flux<DataBuffer> chunks(String fixture, int chunkSize) throws IOException {
+        byte[] bytes;
+        try (InputStream inputStream = SearchTrackIdDecoderTest.class.getResourceAsStream("/spotify/" + fixture)) {
+            bytes = inputStream.readAllBytes();
+        }
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            byte[] chunk = new byte[Math.min(chunkSize, bytes.length - offset)];
+            System.arraycopy(bytes, offset, chunk, 0, chunk.length);
+            chunks.add(chunk);
+        }
+        return Flux.fromIterable(chunks).map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * AIMD of {@link AdaptiveLimiter}, with latency tolerance making every response fast or slow,
+ * so that limits don't depend on actual timing
+ */
+class AdaptiveLimiterTest {
+
+    private static final int INITIAL_CONCURRENCY = 4;
+    private static final int MAX_CONCURRENCY = 8;
+    private static final int MAX_RATE = 10;
+    private static final double ALWAYS_FAST = 1e12;
+    private static final double ALWAYS_SLOW = 0.5;
+
+    private final FixedRateLimiter rateLimiter = new FixedRateLimiter();
+
+    @Test
+    void increasesConcurrencyByOnePerRound() {
+        AdaptiveLimiter limiter = limiter(ALWAYS_FAST);
+
+        //limit + 1/limit per response: 4.25, 4.49, 4.71, 4.92, 5.12
+        release(limiter, Permit.Outcome.SUCCESS, 4);
+        assertThat(limiter.getLimit()).isEqualTo(INITIAL_CONCURRENCY);
+        release(limiter, Permit.Outcome.SUCCESS, 1);
+        assertThat(limiter.getLimit()).isEqualTo(INITIAL_CONCURRENCY + 1);
+
+        release(limiter, Permit.Outcome.SUCCESS, 100);
+        assertThat(limiter.getLimit()).isEqualTo(MAX_CONCURRENCY);
+        assertThat(limiter.getRate()).isEqualTo(MAX_RATE);
+    }
+
+    @Test
+    void decreasesConcurrencyAndRateOnThrottling() {
+        AdaptiveLimiter limiter = limiter(ALWAYS_FAST);
+
+        release(limiter, Permit.Outcome.THROTTLED, 1);
+
+        assertThat(limiter.getLimit()).isEqualTo(INITIAL_CONCURRENCY / 2);
+        assertThat(limiter.getRate()).isEqualTo(MAX_RATE / 2);
+
+        //rate + 1/rate per response: 5.2, 5.39, 5.58, 5.76, 5.93, 6.1
+        release(limiter, Permit.Outcome.SUCCESS, 6);
+        assertThat(limiter.getRate()).isEqualTo(MAX_RATE / 2 + 1);
+    }
+
+    @Test
+    void decreasesOncePerBurst() {
+        AdaptiveLimiter limiter = limiter(ALWAYS_FAST);
+        List<Permit> burst = acquire(limiter, INITIAL_CONCURRENCY);
+        awaitTick();
+
+        burst.forEach(permit -> release(limiter, permit, Permit.Outcome.THROTTLED));
+
+        assertThat(limiter.getLimit()).isEqualTo(INITIAL_CONCURRENCY / 2);
+        assertThat(limiter.getRate()).isEqualTo(MAX_RATE / 2);
+
+        //request started after the decrease is counted
+        release(limiter, Permit.Outcome.THROTTLED, 1);
+        assertThat(limiter.getLimit()).isEqualTo(INITIAL_CONCURRENCY / 4);
+        assertThat(limiter.getRate()).isEqualTo(MAX_RATE / 4);
+    }
+
+    @Test
+    void decreasesOnlyConcurrencyOnSlowResponse() {
+        AdaptiveLimiter limiter = limiter(ALWAYS_SLOW);
+
+        release(limiter, Permit.Outcome.SUCCESS, 1);
+
+        //4 * 0.9
+        assertThat(limiter.getLimit()).isEqualTo(3);
+        assertThat(limiter.getRate()).isEqualTo(MAX_RATE);
+    }
+
+    @Test
+    void queuesRequestsAboveLimit() {
+        AdaptiveLimiter limiter = limiter(ALWAYS_FAST);
+        List<Permit> running = acquire(limiter, INITIAL_CONCURRENCY);
+        Permit waiting = new Permit("user", false);
+        Mono<Void> granted = limiter.acquire(waiting).cache();
+        granted.subscribe();
+
+        assertThat(limiter.getInFlight()).isEqualTo(INITIAL_CONCURRENCY);
+        assertThat(limiter.getWaiting()).isEqualTo(1);
+
+        release(limiter, running.get(0), Permit.Outcome.IGNORED);
+
+        assertThat(limiter.getWaiting()).isZero();
+        assertThat(granted.toFuture()).isDone();
+    }
+
+    @Test
+    void forgetsCancelledWaiters() {
+        AdaptiveLimiter limiter = limiter(ALWAYS_FAST);
+        List<Permit> running = acquire(limiter, INITIAL_CONCURRENCY);
+        Permit cancelled = new Permit("user", false);
+        limiter.acquire(cancelled).subscribe().dispose();
+        Permit waiting = new Permit("user", false);
+        Mono<Void> granted = limiter.acquire(waiting).cache();
+        granted.subscribe();
+
+        limiter.release(cancelled);
+
+        assertThat(limiter.getWaiting()).isEqualTo(1);
+        assertThat(limiter.getInFlight()).isEqualTo(INITIAL_CONCURRENCY);
+
+        release(limiter, running.get(0), Permit.Outcome.IGNORED);
+
+        assertThat(granted.toFuture()).isDone();
+        assertThat(limiter.getWaiting()).isZero();
+        assertThat(limiter.getInFlight()).isEqualTo(INITIAL_CONCURRENCY);
+    }
+
+    private AdaptiveLimiter limiter(double latencyTolerance) {
+        SpotifyProps.Limiter limiter = new SpotifyProps.Limiter();
+        limiter.setInitialConcurrency(INITIAL_CONCURRENCY);
+        limiter.setMinConcurrency(1);
+        limiter.setMaxConcurrency(MAX_CONCURRENCY);
+        limiter.setBackoffRatio(0.5);
+        limiter.setLatencyBackoffRatio(0.9);
+        limiter.setLatencyTolerance(latencyTolerance);
+        limiter.setLatencyWindow(100);
+        SpotifyProps.FairQueue fairQueue = new SpotifyProps.FairQueue();
+        fairQueue.setDefaultWeight(1);
+        fairQueue.setStatsTtl(Duration.ofMinutes(1));
+        SpotifyProps spotifyProps = new SpotifyProps();
+        spotifyProps.setLimiter(limiter);
+        spotifyProps.setFairQueue(fairQueue);
+        return new AdaptiveLimiter(spotifyProps, rateLimiter, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Sequential requests, each started after the previous one is released
+     */
+    private static void release(AdaptiveLimiter limiter, Permit.Outcome outcome, int count) {
+        for (int i = 0; i < count; i++) {
+            Permit permit = acquire(limiter, 1).get(0);
+            awaitTick();
+            release(limiter, permit, outcome);
+        }
+    }
+
+    private static List<Permit> acquire(AdaptiveLimiter limiter, int count) {
+        List<Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Permit permit = new Permit("user", false);
+            limiter.acquire(permit).block(Duration.ofSeconds(1));
+            permits.add(permit);
+        }
+        return permits;
+    }
+
+    private static void release(AdaptiveLimiter limiter, Permit permit, Permit.Outcome outcome) {
+        permit.setOutcome(outcome);
+        limiter.release(permit);
+    }
+
+    /**
+     * Latency and burst checks compare {@link System#nanoTime()}, so the next reading must differ from the last one
+     */
+    private static void awaitTick() {
+        long now = System.nanoTime();
+        while (System.nanoTime() == now) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static class FixedRateLimiter implements RequestRateLimiter {
+
+        private int limitForPeriod = MAX_RATE;
+
+        @Override
+        public Mono<Void> acquirePermission() {
+            return Mono.empty();
+        }
+
+        @Override
+        public void onRetryAfter(Duration retryAfter) {
+        }
+
+        @Override
+        public int getLimitForPeriod() {
+            return limitForPeriod;
+        }
+
+        @Override
+        public void changeLimitForPeriod(int limitForPeriod) {
+            this.limitForPeriod = limitForPeriod;
+        }
+
+        @Override
+        public Duration getLimitRefreshPeriod() {
+            return Duration.ofSeconds(1);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class FairQueueTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FairQueue queue = new FairQueue(props(), registry.timer("interactive"), registry.timer("bulk"));
+
+    @Test
+    void sharesRoundsByWeight() {
+        add("heavy", false, 12);
+        add("light", false, 12);
+
+        //heavy has weight 3, light has default weight 1
+        assertThat(poll(8)).containsExactly("heavy", "heavy", "heavy", "light", "heavy", "heavy", "heavy", "light");
+        assertThat(queue.size()).isEqualTo(16);
+    }
+
+    @Test
+    void doesNotDelayNewPrincipalByMoreThanOneRound() {
+        add("heavy", false, 100);
+        poll(2);
+        add("light", false, 1);
+
+        assertThat(poll(3)).containsExactly("heavy", "light", "heavy");
+    }
+
+    @Test
+    void servesInteractiveRequestsFirst() {
+        add("heavy", false, 3);
+        add("light", true, 2);
+        add("heavy", true, 1);
+
+        assertThat(poll(6)).containsExactly("light", "light", "heavy", "heavy", "heavy", "heavy");
+        assertThat(queue.poll()).isNull();
+        assertThat(queue.isEmpty()).isTrue();
+    }
+
+    @Test
+    void reportsQueueDepthOfPrincipalsWithGrantedRequests() {
+        add("heavy", false, 5);
+        add("light", false, 2);
+        poll(4);
+
+        assertThat(queue.getStats(10))
+                .extracting(QueueStats::principal, QueueStats::queueDepth, QueueStats::granted)
+                .containsExactly(tuple("heavy", 2, 3L), tuple("light", 1, 1L));
+    }
+
+    @Test
+    void dropsCancelledPermitsWithoutCountingThem() {
+        List<Permit> cancelled = add("heavy", false, 6);
+        add("light", false, 2);
+        add("light", true, 1).forEach(queue::cancel);
+        cancelled.forEach(queue::cancel);
+
+        assertThat(queue.size()).isEqualTo(2);
+        assertThat(queue.getStats(10)).isEmpty();
+        assertThat(poll(2)).containsExactly("light", "light");
+        assertThat(queue.poll()).isNull();
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.getStats(10))
+                .extracting(QueueStats::principal, QueueStats::queueDepth, QueueStats::granted)
+                .containsExactly(tuple("light", 0, 2L));
+    }
+
+    @Test
+    void uncountsPolledPermitOnlyOnce() {
+        Permit permit = add("heavy", false, 1).get(0);
+
+        assertThat(queue.poll()).isSameAs(permit);
+        assertThat(queue.cancel(permit)).isTrue();
+        assertThat(queue.size()).isZero();
+        assertThat(permit.grant()).isFalse();
+    }
+
+    private List<Permit> add(String principal, boolean interactive, int count) {
+        List<Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Permit permit = new Permit(principal, interactive);
+            queue.add(permit);
+            permits.add(permit);
+        }
+        return permits;
+    }
+
+    private List<String> poll(int count) {
+        List<String> principals = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            principals.add(queue.poll().getPrincipal());
+        }
+        return principals;
+    }
+
+    private static SpotifyProps.FairQueue props() {
+        SpotifyProps.FairQueue props = new SpotifyProps.FairQueue();
+        props.setDefaultWeight(1);
+        props.setWeights(Map.of("heavy", 3));
+        props.setStatsTtl(Duration.ofMinutes(1));
+        return props;
+    }
+}
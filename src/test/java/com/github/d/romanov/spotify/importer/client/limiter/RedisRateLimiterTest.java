@@ -0,0 +1,178 @@
+package com.github.d.romanov.spotify.importer.client.limiter;
+
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link RedisRateLimiter} instances sharing a bucket in embedded Redis server
+ */
+class RedisRateLimiterTest {
+
+    private static final int LIMIT_FOR_PERIOD = 10;
+    private static final Duration PERIOD = Duration.ofSeconds(100);
+    private static final int PREFETCH = 5;
+
+    private static RedisServer redisServer;
+    private static int port;
+
+    private final List<RedisRateLimiter> limiters = new ArrayList<>();
+    private final String key = "test:" + UUID.randomUUID();
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        port = freePort();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redisServer.stop();
+    }
+
+    @AfterEach
+    void closeLimiters() {
+        limiters.forEach(RedisRateLimiter::close);
+    }
+
+    @Test
+    void instancesShareLimitForPeriod() throws InterruptedException {
+        RedisRateLimiter first = connectedLimiter();
+        RedisRateLimiter second = connectedLimiter();
+
+        StepVerifier.create(Flux.range(0, PREFETCH).concatMap(i -> first.acquirePermission()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+        StepVerifier.create(Flux.range(0, PREFETCH).concatMap(i -> second.acquirePermission()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        //whole limit is taken by the two instances, so neither gets another permit until the bucket refills
+        StepVerifier.create(first.acquirePermission())
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(500))
+                .thenCancel()
+                .verify();
+        StepVerifier.create(second.acquirePermission())
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(500))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void localLimitScalesPrefetchOnlyNotSharedRefill() throws InterruptedException {
+        RedisRateLimiter throttled = connectedLimiter();
+        RedisRateLimiter other = connectedLimiter();
+
+        //AIMD of a throttled instance lowers its own limit, the bucket still holds the whole cluster limit
+        throttled.changeLimitForPeriod(1);
+        StepVerifier.create(Flux.range(0, 3).concatMap(i -> throttled.acquirePermission()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+        StepVerifier.create(Flux.range(0, LIMIT_FOR_PERIOD - 3).concatMap(i -> other.acquirePermission()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        StepVerifier.create(other.acquirePermission())
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(500))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void retryAfterPausesOtherInstances() throws InterruptedException {
+        RedisRateLimiter first = connectedLimiter();
+        RedisRateLimiter second = connectedLimiter();
+
+        first.onRetryAfter(Duration.ofSeconds(2));
+        //backoff is shared asynchronously
+        awaitBackoff();
+
+        StepVerifier.create(second.acquirePermission())
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(1000))
+                .expectComplete()
+                .verify(Duration.ofSeconds(3));
+    }
+
+    @Test
+    void fallsBackToLocalLimiterIfRedisIsUnavailable() throws IOException {
+        RedisRateLimiter limiter = limiter("redis://localhost:" + freePort() + "?timeout=500ms");
+
+        assertThat(limiter.isConnected()).isFalse();
+        StepVerifier.create(Flux.range(0, PREFETCH).concatMap(i -> limiter.acquirePermission()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+    }
+
+    private void awaitBackoff() throws InterruptedException {
+        RedisClient client = RedisClient.create("redis://localhost:" + port);
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            long deadline = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+            while (connection.sync().exists(key + ":backoff") == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private RedisRateLimiter connectedLimiter() throws InterruptedException {
+        RedisRateLimiter limiter = limiter("redis://localhost:" + port + "?timeout=500ms");
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!limiter.isConnected() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(limiter.isConnected()).isTrue();
+        return limiter;
+    }
+
+    private RedisRateLimiter limiter(String uri) {
+        SpotifyProps.RateLimiter.Redis redis = new SpotifyProps.RateLimiter.Redis();
+        redis.setUri(uri);
+        redis.setKey(key);
+        redis.setPrefetch(PREFETCH);
+        SpotifyProps.RateLimiter rateLimiter = new SpotifyProps.RateLimiter();
+        rateLimiter.setLimitForPeriod(LIMIT_FOR_PERIOD);
+        rateLimiter.setLimitRefreshPeriod(PERIOD);
+        rateLimiter.setRedis(redis);
+        SpotifyProps spotifyProps = new SpotifyProps();
+        spotifyProps.setRateLimiter(rateLimiter);
+
+        RateLimiter local = RateLimiter.of("test", RateLimiterConfig.custom()
+                .limitForPeriod(LIMIT_FOR_PERIOD)
+                .limitRefreshPeriod(PERIOD)
+                .timeoutDuration(Duration.ofSeconds(1))
+                .build());
+        RedisRateLimiter limiter = new RedisRateLimiter(spotifyProps, local);
+        limiters.add(limiter);
+        return limiter;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
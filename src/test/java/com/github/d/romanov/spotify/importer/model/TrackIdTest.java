@@ -0,0 +1,73 @@
+package com.github.d.romanov.spotify.importer.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class TrackIdTest {
+
+    private static final String ID = "3z8h0TU7ReDPLIbEnYhWZb";
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "spotify:track:" + ID,
+            "https://open.spotify.com/track/" + ID,
+            "http://open.spotify.com/track/" + ID,
+            "open.spotify.com/track/" + ID,
+            "https://open.spotify.com/intl-de/track/" + ID,
+            "https://open.spotify.com/intl-pt/track/" + ID + "?si=4f2a9c1b8e7d4c3a",
+            "https://open.spotify.com/track/" + ID + "?si=4f2a9c1b8e7d4c3a&context=spotify%3Aplaylist%3A1",
+            "https://open.spotify.com/track/" + ID + "#0:42",
+            "https://open.spotify.com/track/" + ID + "/"
+    })
+    void parsesTrackUrisAndLinks(String text) {
+        assertThat(TrackId.fromUriOrLink(text)).isEqualTo(TrackId.of(ID));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "Hello, Goodbye - The Beatles",
+            ID,
+            "spotify:track:3z8h0TU7ReDPLIbEnYhWZ",
+            "spotify:track:3z8h0TU7ReDPLIbEnYhWZbX",
+            "spotify:track:3z8h0TU7ReDPLIbEnYhWZ!",
+            "spotify:track:3z8h0TU7ReDPLIbEnYhWZ_",
+            "spotify:track:3z8h0TU7ReDPLIbEnYhWZé",
+            "spotify:album:" + ID,
+            "https://open.spotify.com/album/" + ID,
+            "https://open.spotify.com/track/3z8h0TU7ReDPLIbEnYhWZ",
+            "https://open.spotify.com/track/3z8h0TU7ReDPLIbEnYhWZb1?si=abc",
+            "https://open.spotify.com/track/3z8h0TU7ReDPLIbEnYh-Zb",
+            "https://example.com/track/" + ID
+    })
+    void rejectsOtherText(String text) {
+        assertThat(TrackId.fromUriOrLink(text)).isNull();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {ID, "0000000000000000000000", "zzzzzzzzzzzzzzzzzzzzzz", "4uLU6hMCjMI75M1A2tKUQC"})
+    void roundTripsThroughPackedForm(String id) {
+        TrackId trackId = TrackId.of(id);
+
+        assertThat(trackId.toString()).isEqualTo(id);
+        assertThat(trackId.toUri()).isEqualTo("spotify:track:" + id);
+        assertThat(TrackId.fromUriOrLink(trackId.toUri())).isEqualTo(trackId);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "3z8h0TU7ReDPLIbEnYhWZ", "3z8h0TU7ReDPLIbEnYhWZbX", "3z8h0TU7ReDPLIbEnYh-Zb"})
+    void rejectsInvalidIds(String id) {
+        assertThat(TrackId.isValid(id)).isFalse();
+        assertThatIllegalArgumentException().isThrownBy(() -> TrackId.of(id));
+    }
+
+    @Test
+    void rejectsNull() {
+        assertThat(TrackId.isValid(null)).isFalse();
+        assertThat(TrackId.fromUriOrLink(null)).isNull();
+    }
+}
@@ -0,0 +1,220 @@
+package com.github.d.romanov.spotify.importer.service;
+
+import com.github.d.romanov.spotify.importer.client.SpotifyClient;
+import com.github.d.romanov.spotify.importer.config.props.ImportProps;
+import com.github.d.romanov.spotify.importer.config.props.SpotifyProps;
+import com.github.d.romanov.spotify.importer.metrics.ImportMetrics;
+import com.github.d.romanov.spotify.importer.model.ImportProgress;
+import com.github.d.romanov.spotify.importer.model.ImportResult;
+import com.github.d.romanov.spotify.importer.model.ImportType;
+import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import com.github.d.romanov.spotify.importer.model.UploadedFile;
+import com.github.d.romanov.spotify.importer.model.dto.AddTracksToPlaylistRequest;
+import com.github.d.romanov.spotify.importer.model.dto.UploadRequest;
+import com.github.d.romanov.spotify.importer.service.journal.ImportJournals;
+import com.github.d.romanov.spotify.importer.service.parser.ParserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Import resumed from the journal of a previous attempt, with a mocked Spotify client
+ */
+class ImporterServiceTest {
+
+    private static final int TRACKS = 60;
+    private static final String PLAYLIST_ID = "playlist";
+
+    @TempDir
+    Path directory;
+
+    private final List<Track> tracks = IntStream.range(0, TRACKS)
+            .mapToObj(i -> Track.builder()
+                    .trackName("Track " + i)
+                    .artistName("Artist " + i)
+                    .build())
+            .toList();
+    /**
+     * Tracks of the playlist, written by all attempts
+     */
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private Path spoolFile;
+    private SpotifyClient spotifyClient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        spoolFile = Files.writeString(directory.resolve("library.txt"), "library");
+    }
+
+    @Test
+    void resumesAfterCrashDuringRetryOfFailedLookups() throws IOException, InterruptedException {
+        //track 0 of the first batch and track 55 of the second one fail, track 0 is found by the retry and written,
+        //the attempt crashes while track 55 is retried
+        Disposable firstAttempt = importer((track, attempt) -> switch (number(track)) {
+            case 0 -> attempt == 0 ? Mono.error(new IllegalStateException("Spotify is unavailable")) : found(track);
+            case 55 -> attempt == 0 ? Mono.error(new IllegalStateException("Spotify is unavailable")) : Mono.never();
+            default -> found(track);
+        }).importTracks(upload(), uploadedFile(), new ImportProgress()).subscribe();
+        awaitJournaled("written\t" + (TRACKS - 1));
+        firstAttempt.dispose();
+
+        assertThat(written).hasSize(TRACKS - 1)
+                .doesNotContain(id(55))
+                .endsWith(id(0));
+
+        //retry of track 0 would fail now, it must be replayed from the journal, not searched again
+        ImportResult result = importer((track, attempt) -> number(track) == 0
+                ? Mono.error(new IllegalStateException("Spotify is unavailable"))
+                : found(track))
+                .importTracks(upload(), uploadedFile(), new ImportProgress())
+                .block(Duration.ofSeconds(10));
+
+        assertThat(result.isImportSuccessful()).isTrue();
+        assertThat(result.notFoundTracks().count()).isZero();
+        assertThat(written.subList(TRACKS - 1, written.size())).containsExactly(id(55));
+        assertThat(written).hasSize(TRACKS)
+                .doesNotHaveDuplicates();
+        result.notFoundTracks().release().block();
+    }
+
+    @Test
+    void validatesListedTracksInsteadOfSearching() {
+        //as parsed from a track URI line, see TxtFileParser and CsvFileParser
+        Track listed = Track.ofLink(id(1), TrackId.fromUriOrLink(id(1)));
+        List<Track> parsed = List.of(tracks.get(0), listed, tracks.get(2));
+        ImporterService importer = importer(parsed, (track, attempt) -> found(track));
+
+        ImportResult result = importer.importTracks(upload(), uploadedFile(), new ImportProgress())
+                .block(Duration.ofSeconds(10));
+
+        assertThat(result.isImportSuccessful()).isTrue();
+        assertThat(written).containsExactly(id(0), id(1), id(2));
+        verify(spotifyClient).getTracks(List.of(listed));
+        verify(spotifyClient, never()).searchTrackId(listed);
+        result.notFoundTracks().release().block();
+    }
+
+    private ImporterService importer(BiFunction<Track, Integer, Mono<Track>> search) {
+        return importer(tracks, search);
+    }
+
+    /**
+     * @param parsed Tracks of the uploaded file
+     * @param search Search result by track and number of previous searches of the track
+     */
+    private ImporterService importer(List<Track> parsed, BiFunction<Track, Integer, Mono<Track>> search) {
+        Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        spotifyClient = mock(SpotifyClient.class);
+        when(spotifyClient.searchTrackId(any())).thenAnswer(invocation -> {
+            Track track = invocation.getArgument(0);
+            return search.apply(track, attempts.computeIfAbsent(track.trackName(), name -> new AtomicInteger())
+                    .getAndIncrement());
+        });
+        when(spotifyClient.addTracksToPlaylist(any(), anyString())).thenAnswer(invocation -> {
+            AddTracksToPlaylistRequest request = invocation.getArgument(0);
+            //playlist is shared by the attempts, each batch is inserted after the last written one
+            assertThat(request.position()).isEqualTo(written.size());
+            written.addAll(request.uris());
+            return Mono.just("snapshot");
+        });
+        when(spotifyClient.getTracks(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        ParserService parserService = mock(ParserService.class);
+        when(parserService.parseTracks(any())).thenReturn(Flux.fromIterable(parsed));
+        ImportMetrics importMetrics = mock(ImportMetrics.class);
+        when(importMetrics.timeWrite(any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+
+        //new journals per attempt, as after a restart
+        return new ImporterService(spotifyClient, parserService, spotifyProps(), importProps(),
+                new ImportJournals(importProps()), importMetrics);
+    }
+
+    private void awaitJournaled(String record) throws IOException, InterruptedException {
+        Path journals = directory.resolve("journals");
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            if (Files.isDirectory(journals)) {
+                try (Stream<Path> files = Files.list(journals)) {
+                    List<String> contents = new ArrayList<>();
+                    for (Path file : files.toList()) {
+                        contents.add(Files.readString(file));
+                    }
+                    if (contents.stream().anyMatch(content -> content.contains(record + "\n"))) {
+                        return;
+                    }
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Journal has no record " + record);
+    }
+
+    private int number(Track track) {
+        return tracks.indexOf(track.withId(null));
+    }
+
+    private Mono<Track> found(Track track) {
+        return Mono.just(track.withId(TrackId.of(String.format("%022d", number(track)))));
+    }
+
+    private static String id(int number) {
+        return TrackId.of(String.format("%022d", number)).toUri();
+    }
+
+    private UploadRequest upload() {
+        return new UploadRequest(null, ImportType.PLAYLIST, PLAYLIST_ID, null, false, -1);
+    }
+
+    private UploadedFile uploadedFile() {
+        return new UploadedFile("library.txt", null, 7, spoolFile, Flux.empty());
+    }
+
+    private SpotifyProps spotifyProps() {
+        SpotifyProps.Limiter limiter = new SpotifyProps.Limiter();
+        limiter.setMaxConcurrency(8);
+        SpotifyProps.Writer writer = new SpotifyProps.Writer();
+        writer.setFlushInterval(Duration.ofMillis(50));
+        SpotifyProps spotifyProps = new SpotifyProps();
+        spotifyProps.setLimiter(limiter);
+        spotifyProps.setWriter(writer);
+        return spotifyProps;
+    }
+
+    private ImportProps importProps() {
+        ImportProps.NotFound notFound = new ImportProps.NotFound();
+        notFound.setSampleSize(10);
+        notFound.setSpillDirectory(directory.resolve("not-found").toString());
+        ImportProps.Journal journal = new ImportProps.Journal();
+        journal.setDirectory(directory.resolve("journals").toString());
+        journal.setTtl(Duration.ofDays(1));
+        ImportProps importProps = new ImportProps();
+        importProps.setNotFound(notFound);
+        importProps.setJournal(journal);
+        return importProps;
+    }
+}
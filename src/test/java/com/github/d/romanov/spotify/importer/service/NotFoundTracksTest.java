@@ -0,0 +1,95 @@
+package com.github.d.romanov.spotify.importer.service;
+
+import com.github.d.romanov.spotify.importer.model.Track;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotFoundTracksTest {
+
+    private static final int SAMPLE_SIZE = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void spillsTracksBeyondSampleFromConcurrentProducers() {
+        NotFoundTracks notFoundTracks = new NotFoundTracks(SAMPLE_SIZE, directory);
+
+        Flux.range(0, 1000)
+                .parallel(4)
+                .runOn(Schedulers.parallel())
+                .doOnNext(i -> notFoundTracks.add(track(i)))
+                .sequential()
+                .blockLast();
+        notFoundTracks.complete().block();
+
+        assertThat(notFoundTracks.count()).isEqualTo(1000);
+        assertThat(notFoundTracks.sample()).hasSize(SAMPLE_SIZE);
+        assertThat(notFoundTracks.isTruncated()).isTrue();
+        List<Track> all = notFoundTracks.readAll().collectList().block();
+        assertThat(all).hasSize(1000)
+                .extracting(Track::trackName)
+                .doesNotHaveDuplicates();
+        notFoundTracks.release().block();
+    }
+
+    @Test
+    void keepsSampleOnlyInMemory() throws IOException {
+        NotFoundTracks notFoundTracks = new NotFoundTracks(SAMPLE_SIZE, directory);
+
+        notFoundTracks.add(track(1));
+        notFoundTracks.complete().block();
+
+        assertThat(notFoundTracks.readAll().collectList().block()).containsExactly(track(1));
+        assertThat(files()).isEmpty();
+        notFoundTracks.release().block();
+    }
+
+    @Test
+    void releaseClosesAndDeletesFileOfUncompletedImport() throws IOException {
+        NotFoundTracks notFoundTracks = new NotFoundTracks(SAMPLE_SIZE, directory);
+        for (int i = 0; i < SAMPLE_SIZE + 5; i++) {
+            notFoundTracks.add(track(i));
+        }
+
+        notFoundTracks.release().block();
+        notFoundTracks.add(track(SAMPLE_SIZE + 5));
+
+        assertThat(files()).isEmpty();
+        assertThat(notFoundTracks.count()).isEqualTo(SAMPLE_SIZE + 5);
+        notFoundTracks.release().block();
+    }
+
+    @Test
+    void escapesSeparatorsInNames() {
+        Track track = Track.builder()
+                .trackName("Track\tName")
+                .artistName("Artist\nName")
+                .build();
+
+        assertThat(NotFoundTracks.format(track)).isEqualTo("Track Name\tArtist Name");
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+
+    private static Track track(int i) {
+        return Track.builder()
+                .trackName("Track " + i)
+                .artistName("Artist " + i)
+                .build();
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.d.romanov.spotify.importer.service.job;
+
+import com.github.d.romanov.spotify.importer.config.props.ImportProps;
+import com.github.d.romanov.spotify.importer.config.props.UploadProps;
+import com.github.d.romanov.spotify.importer.model.ImportType;
+import com.github.d.romanov.spotify.importer.model.dto.UploadRequest;
+import com.github.d.romanov.spotify.importer.service.ImporterService;
+import com.github.d.romanov.spotify.importer.service.upload.UploadSpooler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Spool files of jobs that never run are released
+ */
+class ImportJobServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private ImportJobService importJobService;
+
+    @BeforeEach
+    void setUp() {
+        UploadProps uploadProps = new UploadProps();
+        uploadProps.setSpoolDirectory(directory.toString());
+        uploadProps.setReadChunkSize(DataSize.ofKilobytes(64));
+        ImportProps.Jobs jobs = new ImportProps.Jobs();
+        jobs.setMaxRunning(1);
+        jobs.setMaxQueued(10);
+        jobs.setResultTtl(Duration.ofMinutes(1));
+        jobs.setProgressInterval(Duration.ofSeconds(1));
+        ImportProps importProps = new ImportProps();
+        importProps.setJobs(jobs);
+
+        ImporterService importerService = mock(ImporterService.class);
+        when(importerService.importTracks(any(), any(), any())).thenReturn(Mono.never());
+        importJobService = new ImportJobService(importerService, new UploadSpooler(uploadProps), importProps);
+    }
+
+    @AfterEach
+    void tearDown() {
+        importJobService.dispose();
+    }
+
+    @Test
+    void releasesSpoolsOfRunningAndQueuedJobsOnDispose() throws IOException {
+        submit().expectNextCount(1).verifyComplete();
+        submit().expectNextCount(1).verifyComplete();
+        assertThat(spoolFiles()).hasSize(2);
+
+        importJobService.dispose();
+
+        assertThat(spoolFiles()).isEmpty();
+    }
+
+    @Test
+    void releasesSpoolWhenJobCantBeQueued() throws IOException {
+        importJobService.dispose();
+
+        submit().verifyError(IllegalStateException.class);
+
+        assertThat(spoolFiles()).isEmpty();
+    }
+
+    private StepVerifier.FirstStep<ImportJob> submit() {
+        UploadRequest upload = new UploadRequest(filePart(), ImportType.LIKED_SONGS, null, null, false, -1);
+        return StepVerifier.create(importJobService.submit(upload)
+                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(
+                        new TestingAuthenticationToken("user", null))));
+    }
+
+    private static FilePart filePart() {
+        FilePart part = mock(FilePart.class);
+        when(part.filename()).thenReturn("library.txt");
+        when(part.headers()).thenReturn(HttpHeaders.EMPTY);
+        when(part.transferTo(any(Path.class))).thenAnswer(invocation -> Mono.fromCallable(() ->
+                Files.writeString(invocation.getArgument(0), "Artist - Track\n")).then());
+        return part;
+    }
+
+    private List<Path> spoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.d.romanov.spotify.importer.service.journal;
+
+import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImportJournalTest {
+
+    private static final String INPUT_HASH = "hash";
+    private static final TrackId FOUND_ID = TrackId.of("3z8h0TU7ReDPLIbEnYhWZb");
+    private static final TrackId RETRIED_ID = TrackId.of("4uLU6hMCjMI75M1A2tKUQC");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysFailedLookupsSeparatelyFromNotFound() throws IOException {
+        Path path = directory.resolve("import.journal");
+        List<Track> batch = List.of(track("Found"), track("Not Found"), track("Failed"));
+        ImportJournal journal = ImportJournal.open(path, INPUT_HASH, () -> {});
+        journal.onResolved(0, List.of(batch.get(0).withId(FOUND_ID), batch.get(1), batch.get(2)), List.of(2))
+                .block();
+        journal.close().block();
+
+        ImportJournal resumed = ImportJournal.open(path, INPUT_HASH, () -> {});
+
+        assertThat(resumed.isResumed()).isTrue();
+        assertThat(resumed.getResolved(0, batch))
+                .extracting(Track::id)
+                .containsExactly(FOUND_ID, null, null);
+        assertThat(resumed.getFailed(0)).containsExactly(2);
+        assertThat(resumed.getFailed(1)).isEmpty();
+        resumed.close().block();
+    }
+
+    @Test
+    void replaysRetriedWrittenAndPlaylist() throws IOException {
+        Path path = directory.resolve("import.journal");
+        List<Track> failed = List.of(track("Retried"), track("Failed Again"));
+        ImportJournal journal = ImportJournal.open(path, INPUT_HASH, () -> {});
+        journal.onPlaylistCreated("playlist").block();
+        journal.onRetried(3, List.of(failed.get(0).withId(RETRIED_ID), failed.get(1))).block();
+        journal.onWritten(100).block();
+        journal.onWritten(150).block();
+        journal.close().block();
+
+        ImportJournal resumed = ImportJournal.open(path, INPUT_HASH, () -> {});
+
+        assertThat(resumed.isResumed()).isTrue();
+        assertThat(resumed.getPlaylistId()).isEqualTo("playlist");
+        assertThat(resumed.getWritten()).isEqualTo(150);
+        assertThat(resumed.getRetried(3, failed))
+                .extracting(Track::id)
+                .containsExactly(RETRIED_ID, null);
+        assertThat(resumed.getRetried(3, failed.subList(0, 1))).isNull();
+        assertThat(resumed.getRetried(4, failed)).isNull();
+        resumed.close().block();
+    }
+
+    @Test
+    void truncatesTornLastRecord() throws IOException {
+        Path path = directory.resolve("import.journal");
+        List<Track> batch = List.of(track("Found"));
+        ImportJournal journal = ImportJournal.open(path, INPUT_HASH, () -> {});
+        journal.onResolved(0, List.of(batch.get(0).withId(FOUND_ID)), List.of()).block();
+        journal.close().block();
+        long validLength = Files.size(path);
+        //record torn by a crash: its CRC doesn't match the part that made it to disk
+        String record = "written\t1";
+        Files.writeString(path, crc(record + "0") + "\t" + record, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ImportJournal resumed = ImportJournal.open(path, INPUT_HASH, () -> {});
+
+        assertThat(Files.size(path)).isEqualTo(validLength);
+        assertThat(resumed.getWritten()).isZero();
+        assertThat(resumed.getResolved(0, batch)).extracting(Track::id).containsExactly(FOUND_ID);
+        resumed.onWritten(1).block();
+        resumed.close().block();
+
+        //records appended after the truncation are valid
+        ImportJournal reopened = ImportJournal.open(path, INPUT_HASH, () -> {});
+        assertThat(reopened.getWritten()).isEqualTo(1);
+        assertThat(reopened.getResolved(0, batch)).extracting(Track::id).containsExactly(FOUND_ID);
+        reopened.close().block();
+    }
+
+    @Test
+    void discardsJournalOfOtherInput() throws IOException {
+        Path path = directory.resolve("import.journal");
+        List<Track> batch = List.of(track("Found"));
+        ImportJournal journal = ImportJournal.open(path, INPUT_HASH, () -> {});
+        journal.onResolved(0, List.of(batch.get(0).withId(FOUND_ID)), List.of()).block();
+        journal.onWritten(1).block();
+        journal.close().block();
+
+        ImportJournal other = ImportJournal.open(path, "other", () -> {});
+
+        assertThat(other.isResumed()).isFalse();
+        assertThat(other.getWritten()).isZero();
+        assertThat(other.getResolved(0, batch)).isNull();
+        assertThat(Files.readAllLines(path)).hasSize(1).allMatch(line -> line.endsWith("input\tother"));
+        other.close().block();
+    }
+
+    private static String crc(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static Track track(String trackName) {
+        return Track.builder()
+                .trackName(trackName)
+                .artistName("Artist")
+                .build();
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.d.romanov.spotify.importer.service.journal;
+
+import com.github.d.romanov.spotify.importer.config.props.ImportProps;
+import com.github.d.romanov.spotify.importer.model.ImportType;
+import com.github.d.romanov.spotify.importer.model.UploadedFile;
+import com.github.d.romanov.spotify.importer.model.dto.UploadRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImportJournalsTest {
+
+    private static final UploadRequest UPLOAD = new UploadRequest(null, ImportType.LIKED_SONGS, null, null, false, -1);
+
+    @TempDir
+    Path directory;
+
+    private ImportJournals importJournals;
+    private UploadedFile uploadedFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ImportProps.Journal journal = new ImportProps.Journal();
+        journal.setDirectory(directory.resolve("journals").toString());
+        journal.setTtl(Duration.ofDays(1));
+        ImportProps importProps = new ImportProps();
+        importProps.setJournal(journal);
+        importJournals = new ImportJournals(importProps);
+        Path spoolFile = Files.writeString(directory.resolve("library.txt"), "Artist - Track\n");
+        uploadedFile = new UploadedFile("library.txt", null, Files.size(spoolFile), spoolFile, Flux.empty());
+    }
+
+    @Test
+    void rejectsConcurrentImportOfTheSameFile() {
+        ImportJournal journal = importJournals.open(UPLOAD, uploadedFile).block();
+        assertThat(journal).isNotNull();
+
+        StepVerifier.create(importJournals.open(UPLOAD, uploadedFile))
+                .verifyErrorMessage("The same file is already being imported");
+
+        journal.close().block();
+        ImportJournal resumed = importJournals.open(UPLOAD, uploadedFile).block();
+        assertThat(resumed).isNotNull();
+        resumed.close().block();
+    }
+
+    @Test
+    void opensSeparateJournalsForOtherTargets() {
+        UploadRequest playlistUpload = new UploadRequest(null, ImportType.PLAYLIST, "playlist", null, false, -1);
+        ImportJournal journal = importJournals.open(UPLOAD, uploadedFile).block();
+
+        StepVerifier.create(importJournals.open(playlistUpload, uploadedFile)
+                        .flatMap(other -> other.close().thenReturn(other)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        journal.close().block();
+    }
+}
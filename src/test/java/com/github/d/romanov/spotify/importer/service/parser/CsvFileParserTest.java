@@ -0,0 +1,81 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import com.github.d.romanov.spotify.importer.config.props.ParserProps;
+import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link CsvFileParser} on content split into buffers of different sizes
+ */
+class CsvFileParserTest {
+
+    private static final TrackId ID = TrackId.of("3z8h0TU7ReDPLIbEnYhWZb");
+
+    private final CsvFileParser parser = new CsvFileParser(parserProps());
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1024})
+    void findsColumnsByHeader(int chunkSize) {
+        String content = """
+                "Track URI","Track Name","Album Name","Artist Name(s)"
+                "spotify:track:3z8h0TU7ReDPLIbEnYhWZb","Hello, Goodbye","Magical Mystery Tour","The Beatles"
+                "","Jóga","Homogenic","Björk"
+                "https://open.spotify.com/intl-de/track/3z8h0TU7ReDPLIbEnYhWZb?si=1","Hello, Goodbye","","The Beatles"
+                """;
+
+        StepVerifier.create(parser.parseTracks(chunks(content, chunkSize)))
+                .expectNext(new Track("Hello, Goodbye", "The Beatles", ID))
+                .expectNext(new Track("Jóga", "Björk", null))
+                .expectNext(new Track("Hello, Goodbye", "The Beatles", ID))
+                .verifyComplete();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1024})
+    void matchesHeaderIgnoringCaseAndOrder(int chunkSize) {
+        String content = "artist,title,spotify id\r\nThe Beatles,Hello Goodbye,3z8h0TU7ReDPLIbEnYhWZb\r\n"
+                + "Björk,Jóga\r\n";
+
+        StepVerifier.create(parser.parseTracks(chunks(content, chunkSize)))
+                .expectNext(new Track("Hello Goodbye", "The Beatles", ID))
+                .expectNext(new Track("Jóga", "Björk", null))
+                .verifyComplete();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1024})
+    void failsWithoutTrackNameColumn(int chunkSize) {
+        StepVerifier.create(parser.parseTracks(chunks("Album,Artist\nHomogenic,Björk\n", chunkSize)))
+                .verifyErrorMessage("No track name column found in csv header");
+    }
+
+    private static ParserProps parserProps() {
+        ParserProps.Csv csv = new ParserProps.Csv();
+        csv.setDelimiter(",");
+        csv.setQuote('"');
+        ParserProps parserProps = new ParserProps();
+        parserProps.setCsv(csv);
+        return parserProps;
+    }
+
+    private static Flux<DataBuffer> chunks(String content, int chunkSize) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            byte[] chunk = new byte[Math.min(chunkSize, bytes.length - offset)];
+            System.arraycopy(bytes, offset, chunk, 0, chunk.length);
+            chunks.add(chunk);
+        }
+        return Flux.fromIterable(chunks).map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+}
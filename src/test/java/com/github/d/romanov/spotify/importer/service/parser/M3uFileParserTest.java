@@ -0,0 +1,88 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import com.github.d.romanov.spotify.importer.config.props.ParserProps;
+import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link M3uFileParser} on content split into buffers of different sizes
+ */
+class M3uFileParserTest {
+
+    private static final TrackId ID = TrackId.of("3z8h0TU7ReDPLIbEnYhWZb");
+
+    private final M3uFileParser parser = new M3uFileParser(parserProps());
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1024})
+    void takesTitleFromExtinf(int chunkSize) {
+        String content = """
+                #EXTM3U
+                #EXTINF:123,The Beatles - Hello, Goodbye
+                /music/Beatles/01 Hello Goodbye.mp3
+                #EXTINF:-1,Untitled Stream
+                http://radio.example.com/stream
+                """;
+
+        StepVerifier.create(parser.parseTracks(chunks(content, chunkSize)))
+                .expectNext(new Track("Hello, Goodbye", "The Beatles", null))
+                .expectNext(new Track("Untitled Stream", "", null))
+                .verifyComplete();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1024})
+    void fallsBackToFileBaseName(int chunkSize) {
+        String content = "#EXTM3U\r\n#EXTINF:200\r\nC:\\Music\\Björk - Jóga.flac\r\n/music/Track Only.mp3";
+
+        StepVerifier.create(parser.parseTracks(chunks(content, chunkSize)))
+                .expectNext(new Track("Jóga", "Björk", null))
+                .expectNext(new Track("Track Only", "", null))
+                .verifyComplete();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1024})
+    void keepsTrackLinks(int chunkSize) {
+        String content = """
+                #EXTM3U
+                https://open.spotify.com/track/3z8h0TU7ReDPLIbEnYhWZb?si=abc
+                #EXTINF:180,The Beatles - Hello, Goodbye
+                spotify:track:3z8h0TU7ReDPLIbEnYhWZb
+                """;
+
+        StepVerifier.create(parser.parseTracks(chunks(content, chunkSize)))
+                .expectNext(Track.ofLink("https://open.spotify.com/track/3z8h0TU7ReDPLIbEnYhWZb?si=abc", ID))
+                .expectNext(new Track("Hello, Goodbye", "The Beatles", ID))
+                .verifyComplete();
+    }
+
+    private static ParserProps parserProps() {
+        ParserProps.M3u m3u = new ParserProps.M3u();
+        m3u.setDelimiter(" - ");
+        ParserProps parserProps = new ParserProps();
+        parserProps.setM3u(m3u);
+        return parserProps;
+    }
+
+    private static Flux<DataBuffer> chunks(String content, int chunkSize) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            byte[] chunk = new byte[Math.min(chunkSize, bytes.length - offset)];
+            System.arraycopy(bytes, offset, chunk, 0, chunk.length);
+            chunks.add(chunk);
+        }
+        return Flux.fromIterable(chunks).map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+}
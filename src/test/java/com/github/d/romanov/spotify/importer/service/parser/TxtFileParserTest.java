@@ -0,0 +1,63 @@
+package com.github.d.romanov.spotify.importer.service.parser;
+
+import com.github.d.romanov.spotify.importer.config.props.ParserProps;
+import com.github.d.romanov.spotify.importer.model.Track;
+import com.github.d.romanov.spotify.importer.model.TrackId;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link TxtFileParser} on content split into buffers of different sizes
+ */
+class TxtFileParserTest {
+
+    private static final TrackId ID = TrackId.of("3z8h0TU7ReDPLIbEnYhWZb");
+
+    private final TxtFileParser parser = new TxtFileParser(parserProps());
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1024})
+    void listsTrackUrisAndLinksWithId(int chunkSize) {
+        String content = """
+                Hello, Goodbye - The Beatles
+                spotify:track:3z8h0TU7ReDPLIbEnYhWZb
+                https://open.spotify.com/intl-de/track/3z8h0TU7ReDPLIbEnYhWZb?si=4f2a-9c1b
+                https://open.spotify.com/album/3z8h0TU7ReDPLIbEnYhWZb
+                """;
+
+        StepVerifier.create(parser.parseTracks(chunks(content, chunkSize)))
+                .expectNext(new Track("Hello, Goodbye", "The Beatles", null))
+                .expectNext(Track.ofLink("spotify:track:3z8h0TU7ReDPLIbEnYhWZb", ID))
+                .expectNext(Track.ofLink("https://open.spotify.com/intl-de/track/3z8h0TU7ReDPLIbEnYhWZb?si=4f2a-9c1b",
+                        ID))
+                .expectNext(new Track("https://open.spotify.com/album/3z8h0TU7ReDPLIbEnYhWZb", "", null))
+                .verifyComplete();
+    }
+
+    private static ParserProps parserProps() {
+        ParserProps.Txt txt = new ParserProps.Txt();
+        txt.setDelimiter("-");
+        ParserProps parserProps = new ParserProps();
+        parserProps.setTxt(txt);
+        return parserProps;
+    }
+
+    private static Flux<DataBuffer> chunks(String content, int chunkSize) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            byte[] chunk = new byte[Math.min(chunkSize, bytes.length - offset)];
+            System.arraycopy(bytes, offset, chunk, 0, chunk.length);
+            chunks.add(chunk);
+        }
+        return Flux.fromIterable(chunks).map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.d.romanov.spotify.importer.service.parser.tokenizer;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link RecordTokenizer} on content split into buffers of fixed and random sizes, as it arrives from the upload
+ */
+class RecordTokenizerTest {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("chunkSizes")
+    void decodesUtf8SplitAcrossBuffers(String name, IntSupplier chunkSize) {
+        String content = "Jóga - Björk\nПесня о друге - Высоцкий\n夜に駆ける - YOASOBI 🎵\n";
+
+        assertThat(tokenize(content, chunkSize, () -> new RecordTokenizer(" - ")))
+                .containsExactly(
+                        List.of("Jóga", "Björk"),
+                        List.of("Песня о друге", "Высоцкий"),
+                        List.of("夜に駆ける", "YOASOBI 🎵"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("chunkSizes")
+    void keepsQuoteStateAcrossBuffers(String name, IntSupplier chunkSize) {
+        String content = """
+                "Track Name","Artist Name(s)"
+                "Hello, Goodbye","The Beatles"
+                "Multi
+                line, title","Artist"
+                """;
+
+        assertThat(tokenize(content, chunkSize, () -> new RecordTokenizer(",", '"')))
+                .containsExactly(
+                        List.of("Track Name", "Artist Name(s)"),
+                        List.of("Hello, Goodbye", "The Beatles"),
+                        List.of("Multi\nline, title", "Artist"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("chunkSizes")
+    void unescapesDoubledQuotes(String name, IntSupplier chunkSize) {
+        String content = "\"12\"\" Mix \"\"Extended\"\"\",\"Artist\"\n\"\"\"\",\"\"\n";
+
+        assertThat(tokenize(content, chunkSize, () -> new RecordTokenizer(",", '"')))
+                .containsExactly(
+                        List.of("12\" Mix \"Extended\"", "Artist"),
+                        List.of("\"", ""));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("chunkSizes")
+    void stripsCrlfAndBom(String name, IntSupplier chunkSize) {
+        String content = "\uFEFFTrack 1 - Artist 1\r\n\r\n  \r\nTrack 2 - Artist 2\r\n";
+
+        assertThat(tokenize(content, chunkSize, () -> new RecordTokenizer("-")))
+                .containsExactly(
+                        List.of("Track 1", "Artist 1"),
+                        List.of("Track 2", "Artist 2"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("chunkSizes")
+    void keepsBomLikeBytesAfterFirstLine(String name, IntSupplier chunkSize) {
+        String content = "Track 1\n\uFEFFTrack 2\n";
+
+        assertThat(tokenize(content, chunkSize, () -> new RecordTokenizer(null)))
+                .containsExactly(List.of("Track 1"), List.of("\uFEFFTrack 2"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("chunkSizes")
+    void emitsLastLineWithoutLineFeed(String name, IntSupplier chunkSize) {
+        String content = "\"Track 1\",\"Artist 1\"\r\n\"Track 2\",\"Artist, 2\"";
+
+        assertThat(tokenize(content, chunkSize, () -> new RecordTokenizer(",", '"')))
+                .containsExactly(
+                        List.of("Track 1", "Artist 1"),
+                        List.of("Track 2", "Artist, 2"));
+    }
+
+    static Stream<Arguments> chunkSizes() {
+        return Stream.concat(
+                IntStream.of(1, 2, 3, 7, 1024)
+                        .mapToObj(size -> Arguments.of("fixed " + size, (IntSupplier) () -> size)),
+                IntStream.of(1, 2, 3).mapToObj(seed -> {
+                    Random random = new Random(seed);
+                    return Arguments.of("random " + seed, (IntSupplier) () -> 1 + random.nextInt(16));
+                }));
+    }
+
+    private static List<List<String>> tokenize(String content, IntSupplier chunkSize,
+                                               Supplier<RecordTokenizer> tokenizer) {
+        return RecordTokenizer.tokenize(chunks(content, chunkSize), tokenizer)
+                .map(List::of)
+                .collectList()
+                .block();
+    }
+
+    private static Flux<DataBuffer> chunks(String content, IntSupplier chunkSize) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; ) {
+            byte[] chunk = new byte[Math.min(chunkSize.getAsInt(), bytes.length - offset)];
+            System.arraycopy(bytes, offset, chunk, 0, chunk.length);
+            chunks.add(chunk);
+            offset += chunk.length;
+        }
+        return Flux.fromIterable(chunks).map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+}
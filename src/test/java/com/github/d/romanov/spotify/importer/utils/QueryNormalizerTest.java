@@ -0,0 +1,77 @@
+package com.github.d.romanov.spotify.importer.utils;
+
+import com.github.d.romanov.spotify.importer.model.Track;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Noise is dropped only as a whole bracket or suffix matching a known phrase, titles merely containing
+ * a noise word are kept
+ */
+class QueryNormalizerTest {
+
+    @ParameterizedTest(name = "{0} | {1}")
+    @CsvSource(delimiter = '|', quoteCharacter = '"', value = {
+            "Edith Piaf Tribute (Edith's Song) | X | Edith Piaf Tribute Edith's Song X | edith piaf tribute edith's song x",
+            "Song (Live Forever Mix) | A | Song Live Forever Mix A | song live forever mix a",
+            "Hold On - Live Wire | B | Hold On - Live Wire B | hold on - live wire b",
+            "Never Gonna (Version of Me) | C | Never Gonna Version of Me C | never gonna version of me c",
+            "Song | Artist ft Someone | Song Artist | song artist",
+            "Song | Artist ft. Someone | Song Artist | song artist",
+            "Song (feat. Drake) | A | Song A | song a",
+            "Song (ft Drake) | A | Song A | song a",
+            "Song feat. Drake | A | Song A | song a",
+            "Song (Featuring Drake) | A | Song A | song a",
+            "Yesterday - Remastered 2009 | The Beatles | Yesterday The Beatles | yesterday the beatles",
+            "Yesterday - 2009 Remaster | The Beatles | Yesterday The Beatles | yesterday the beatles",
+            "Song (2011 Remastered Version) | A | Song A | song a",
+            "Song (Live) | A | Song A | song a",
+            "Song - Live at Wembley | A | Song A | song a",
+            "Song (Live from Paris) | A | Song A | song a",
+            "Song - Radio Edit | A | Song A | song a",
+            "Song (Single Version) | A | Song A | song a",
+            "Song (Deluxe Edition) | A | Song A | song a",
+            "Song (Bonus Track) | A | Song A | song a",
+            "Song [Explicit] | A | Song A | song a",
+            "Song (Mono) | A | Song A | song a",
+            "Song (Remix) | A | Song Remix A | song remix a",
+            "Song (Original Mix) | A | Song Original Mix A | song original mix a",
+            "Song (Demo) | A | Song A | song a",
+            "Song (Remastered) | A | Song A | song a",
+            "Live Forever | Oasis | Live Forever Oasis | live forever oasis",
+            "Song (Edit) | A | Song A | song a",
+            "Song (Stereo Version) | A | Song A | song a",
+            "Song (Live Version) | A | Song A | song a",
+            "Dancing Queen | ABBA | Dancing Queen ABBA | dancing queen abba",
+            "Song (Version) | A | Song A | song a",
+            "Song  -  Live | A | Song A | song a",
+            "Song (Live in Tokyo) | A | Song A | song a",
+            "Demo Tape (Live) | A | Demo Tape A | demo tape a"
+    })
+    void normalizes(String trackName, String artistName, String query, String key) {
+        Track track = track(trackName, artistName);
+
+        assertThat(QueryNormalizer.query(track)).isEqualTo(query);
+        assertThat(QueryNormalizer.key(track)).isEqualTo(key);
+    }
+
+    @Test
+    void sharesKeyBetweenSpellingVariants() {
+        Track track = track("Jóga - Live", "Björk");
+        Track variant = track("JOGA (Live at Wembley)", "bjork");
+
+        assertThat(QueryNormalizer.query(track)).isEqualTo("Jóga Björk");
+        assertThat(QueryNormalizer.key(track)).isEqualTo("joga bjork").isEqualTo(QueryNormalizer.key(variant));
+        assertThat(QueryNormalizer.keyHash(track)).isEqualTo(QueryNormalizer.keyHash(variant));
+    }
+
+    private static Track track(String trackName, String artistName) {
+        return Track.builder()
+                .trackName(trackName)
+                .artistName(artistName)
+                .build();
+    }
+}